@@ -0,0 +1,46 @@
+package com.harmonia.bench;
+
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.WavestationSysex;
+
+import java.util.Random;
+
+/** Realistic frames shared by the benchmarks. */
+final class Frames {
+
+    static final int DEVICE_ID = 0x30;
+
+    private Frames() {
+    }
+
+    static byte[] bank() {
+        byte[] data = new byte[DumpType.BANK.getDataSize()];
+        new Random(42).nextBytes(data);
+        return WavestationSysex.buildFrame(DumpType.BANK, DEVICE_ID, new int[] { 1 }, data);
+    }
+
+    static byte[] program() {
+        byte[] data = new byte[DumpType.PROGRAM.getDataSize()];
+        new Random(42).nextBytes(data);
+        return WavestationSysex.buildFrame(DumpType.PROGRAM, DEVICE_ID, new int[] { 1, 5 }, data);
+    }
+
+    /** The frame as a MIDI driver delivers it: F0 packet then F7 continuations. */
+    static byte[][] chunks(byte[] frame, int size) {
+        int n = (frame.length + size - 1) / size;
+        byte[][] chunks = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            int pos = i * size;
+            int len = Math.min(size, frame.length - pos);
+            if (i == 0) {
+                chunks[i] = new byte[len];
+                System.arraycopy(frame, 0, chunks[i], 0, len);
+            } else {
+                chunks[i] = new byte[len + 1];
+                chunks[i][0] = (byte) 0xF7;
+                System.arraycopy(frame, pos, chunks[i], 1, len);
+            }
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,46 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.Hex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Hex formatting used by the MIDI monitor (formerly WaveStationEditor.msgToString). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexBenchmark {
+
+    private final byte[] shortMessage = { (byte) 0x90, 60, 100 };
+    private byte[] program;
+    private byte[] bank;
+
+    @Setup
+    public void setup() {
+        program = Frames.program();
+        bank = Frames.bank();
+    }
+
+    @Benchmark
+    public String shortMessage() {
+        return Hex.toHex(shortMessage);
+    }
+
+    @Benchmark
+    public String monitorRow() {
+        return Hex.toHex(program, 0, 16);
+    }
+
+    @Benchmark
+    public String programDump() {
+        return Hex.toHex(program);
+    }
+
+    @Benchmark
+    public String bankDump() {
+        return Hex.dump(bank, 16);
+    }
+}
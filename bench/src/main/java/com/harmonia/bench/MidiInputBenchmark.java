@@ -0,0 +1,71 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.MidiInputReceiver;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of {@link MidiInputReceiver#send} on the driver thread: filtering and
+ * hand-off to the dispatch thread.
+ *
+ * Each call first waits for ring space, so the producer never outruns the
+ * dispatch thread and the ring-full drop path is never what gets measured;
+ * a run that still drops a message fails. The ring takes a single
+ * producer (the driver thread), so each benchmark thread gets its own
+ * receiver.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MidiInputBenchmark {
+
+    private MidiInputReceiver receiver;
+    private final LongAdder delivered = new LongAdder();
+    private ShortMessage noteOn;
+    private ShortMessage clock;
+    private SysexMessage sysexChunk;
+
+    @Setup
+    public void setup() throws InvalidMidiDataException {
+        receiver = new MidiInputReceiver(null);
+        receiver.addSysexListener(sysex -> delivered.increment());
+        noteOn = new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100);
+        clock = new ShortMessage(ShortMessage.TIMING_CLOCK);
+        byte[] chunk = Frames.chunks(Frames.bank(), 256)[0];
+        sysexChunk = new SysexMessage();
+        sysexChunk.setMessage(chunk, chunk.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        long dropped = receiver.getDroppedCount();
+        receiver.close();
+        if (dropped > 0) throw new IllegalStateException(dropped + " message(s) perdus : ring plein");
+    }
+
+    @Benchmark
+    public void shortMessage() throws InterruptedException {
+        receiver.awaitCapacity();
+        receiver.send(noteOn, -1);
+    }
+
+    @Benchmark
+    public void filteredClock() throws InterruptedException {
+        receiver.awaitCapacity();
+        receiver.send(clock, -1);
+    }
+
+    @Benchmark
+    public void sysexChunk() throws InterruptedException {
+        receiver.awaitCapacity();
+        receiver.send(sysexChunk, -1);
+    }
+}
@@ -0,0 +1,51 @@
+package com.harmonia.bench;
+
+import com.harmonia.wavestation.PatchFileManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** Load and save of bank-sized .syx files. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatchFileBenchmark {
+
+    private File file;
+    private byte[] bank;
+    private ByteBuffer bankBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("bench-bank", ".syx");
+        bank = Frames.bank();
+        bankBuffer = ByteBuffer.wrap(bank).asReadOnlyBuffer();
+        PatchFileManager.save(file, bank);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public byte[] load() throws IOException {
+        return PatchFileManager.load(file);
+    }
+
+    @Benchmark
+    public void saveArray() throws IOException {
+        PatchFileManager.save(file, bank);
+    }
+
+    @Benchmark
+    public void saveBuffer() throws IOException {
+        PatchFileManager.save(file, bankBuffer);
+    }
+}
@@ -0,0 +1,314 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.MidiCommandQueue;
+import com.harmonia.midi.MidiInputReceiver;
+import com.harmonia.midi.MidiManager;
+import com.harmonia.midi.MidiSessionRecorder;
+import com.harmonia.midi.MidiSessionReplayer;
+import com.harmonia.wavestation.DumpCorrelator;
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.PatchArchive;
+import com.harmonia.wavestation.PatchFileManager;
+import com.harmonia.wavestation.WavestationClient;
+import com.harmonia.wavestation.WavestationSession;
+import com.harmonia.wavestation.WavestationSysex;
+import com.harmonia.wavestation.sim.VirtualWavestationSR;
+
+import javax.sound.midi.SysexMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Repeatable checks of the claims the benchmarks rely on, without hardware
+ * (the dump checks run against the in-process {@link VirtualWavestationSR}):
+ *
+ * <pre>
+ * java -cp bench/target/harmonia-bench.jar com.harmonia.bench.SimulatorChecks [check...]
+ * </pre>
+ *
+ * Without arguments every check runs. Each prints OK or the failure; the exit
+ * status is the number of failed checks.
+ */
+public final class SimulatorChecks {
+
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    private static final Map<String, Check> CHECKS = new LinkedHashMap<>();
+
+    static {
+        CHECKS.put("correlator-match", SimulatorChecks::correlatorMatch);
+        CHECKS.put("correlator-out-of-order", SimulatorChecks::correlatorOutOfOrder);
+        CHECKS.put("correlator-timeout", SimulatorChecks::correlatorTimeout);
+        CHECKS.put("correlator-cancel", SimulatorChecks::correlatorCancel);
+        CHECKS.put("archive-corrupt", SimulatorChecks::archiveCorrupt);
+        CHECKS.put("replay-no-drop", SimulatorChecks::replayNoDrop);
+    }
+
+    private SimulatorChecks() {
+    }
+
+    public static void main(String[] args) {
+        List<String> names = args.length == 0 ? new ArrayList<>(CHECKS.keySet()) : Arrays.asList(args);
+        int failed = 0;
+        for (String name : names) {
+            Check check = CHECKS.get(name);
+            if (check == null) {
+                System.out.println("?? " + name + " (checks: " + CHECKS.keySet() + ")");
+                failed++;
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                check.run();
+                System.out.printf("OK   %s (%d ms)%n", name, (System.nanoTime() - start) / 1_000_000);
+            } catch (Throwable e) {
+                System.out.println("FAIL " + name + " : " + e);
+                failed++;
+            }
+        }
+        System.exit(failed);
+    }
+
+    // ---------------------------------------------------------------- correlator
+
+    /** 35 pipelined program requests: each reply reaches its own request, the window is never exceeded. */
+    private static void correlatorMatch() throws Exception {
+        try (Sim sim = new Sim(WavestationSysex.MIDI_BAUD)) {
+            DumpCorrelator correlator = sim.session.getCorrelator();
+            CompletableFuture<List<ByteBuffer>> all = sim.client.dumpPrograms(1);
+            int maxPending = 0;
+            while (!all.isDone()) {
+                maxPending = Math.max(maxPending, correlator.getPendingCount());
+                Thread.sleep(1);
+            }
+            List<ByteBuffer> frames = all.get();
+            check(frames.size() == WavestationSysex.PROGRAMS_PER_BANK, "programs: " + frames.size());
+            for (int p = 0; p < frames.size(); p++) {
+                byte[] frame = bytes(frames.get(p));
+                check(WavestationSysex.isValidDump(frame), "program " + p + " invalid");
+                check(WavestationSysex.bankOf(frame) == 1 && WavestationSysex.programOf(frame) == p,
+                        "program " + p + " got " + WavestationSysex.bankOf(frame) + "/" + WavestationSysex.programOf(frame));
+            }
+            check(maxPending <= DumpCorrelator.DEFAULT_WINDOW, "pending " + maxPending + " > window");
+            check(maxPending > 1, "requests were not pipelined");
+        }
+    }
+
+    /** Replies arriving in another order than the requests still reach the right futures. */
+    private static void correlatorOutOfOrder() throws Exception {
+        try (MidiCommandQueue queue = new MidiCommandQueue("check-queue")) {
+            DumpCorrelator correlator = new DumpCorrelator(queue);
+            CompletableFuture<ByteBuffer> first = correlator.request(DumpType.PROGRAM, Frames.DEVICE_ID, 1, 3, () -> { });
+            CompletableFuture<ByteBuffer> second = correlator.request(DumpType.PROGRAM, Frames.DEVICE_ID, 1, 4, () -> { });
+            await(() -> correlator.getPendingCount() == 2, 1000, "requests not registered");
+
+            byte[] four = program(1, 4);
+            byte[] three = program(1, 3);
+            for (byte[] chunk : Frames.chunks(four, 128)) correlator.onSysexReceived(chunk);
+            for (byte[] chunk : Frames.chunks(three, 128)) correlator.onSysexReceived(chunk);
+
+            check(Arrays.equals(bytes(first.get(1, TimeUnit.SECONDS)), three), "program 3 mismatched");
+            check(Arrays.equals(bytes(second.get(1, TimeUnit.SECONDS)), four), "program 4 mismatched");
+            check(correlator.getPendingCount() == 0, "pending left: " + correlator.getPendingCount());
+        }
+    }
+
+    /** A reply that never comes fails the request with a TimeoutException and frees its slot. */
+    private static void correlatorTimeout() throws Exception {
+        try (Sim sim = new Sim(0)) {
+            sim.device.setDropProbability(1.0);
+            long start = System.nanoTime();
+            Throwable cause = failure(sim.client.dumpProgram(1, 3), DumpType.PROGRAM.getTimeoutMillis() + 2000);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            check(cause instanceof TimeoutException, "expected a timeout, got " + cause);
+            check(millis >= DumpType.PROGRAM.getTimeoutMillis(), "timed out early: " + millis + " ms");
+            check(sim.session.getCorrelator().getPendingCount() == 0, "slot not released");
+
+            sim.device.setDropProbability(0);
+            byte[] frame = bytes(sim.client.dumpProgram(1, 4).get(5, TimeUnit.SECONDS));
+            check(WavestationSysex.programOf(frame) == 4, "request after timeout");
+        }
+    }
+
+    /** Cancelling a windowed dump drops the requests not sent yet and frees every slot. */
+    private static void correlatorCancel() throws Exception {
+        try (Sim sim = new Sim(WavestationSysex.MIDI_BAUD)) {
+            DumpCorrelator correlator = sim.session.getCorrelator();
+            CompletableFuture<List<ByteBuffer>> all = sim.client.dumpPrograms(0);
+            await(() -> correlator.getWaitingCount() > 0, 1000, "nothing waiting behind the window");
+
+            all.cancel(false);
+            await(() -> correlator.getPendingCount() == 0 && correlator.getWaitingCount() == 0,
+                    DumpType.PROGRAM.getTimeoutMillis(), "left pending=" + correlator.getPendingCount()
+                            + " waiting=" + correlator.getWaitingCount());
+
+            byte[] frame = bytes(sim.client.dumpProgram(0, 7).get(5, TimeUnit.SECONDS));
+            check(WavestationSysex.programOf(frame) == 7, "request after cancel");
+        }
+    }
+
+    // ---------------------------------------------------------------- archive
+
+    /** 3000 randomly damaged or truncated archives: reading fails with IOException only. */
+    private static void archiveCorrupt() throws Exception {
+        Random random = new Random(21);
+        Path dir = Files.createTempDirectory("check-archive");
+        try {
+            Path good = dir.resolve("good.wsa");
+            try (PatchArchive.Writer writer = PatchArchive.create(good)) {
+                writer.add("bank", Frames.bank());
+                for (int i = 0; i < 40; i++) {
+                    byte[] d = new byte[200 + random.nextInt(3000)];
+                    random.nextBytes(d);
+                    d[0] = (byte) 0xF0;
+                    writer.add("x" + i, d);
+                }
+            }
+            byte[] original = Files.readAllBytes(good);
+            Path damaged = dir.resolve("damaged.wsa");
+            int rejected = 0;
+            for (int t = 0; t < 3000; t++) {
+                byte[] b = original.clone();
+                for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                    int pos = random.nextInt(b.length);
+                    if (t % 3 == 0) pos = t % 2 == 0 ? 5 + random.nextInt(9) : b.length - 1 - random.nextInt(60);   // header, index
+                    b[pos] = (byte) random.nextInt(256);
+                }
+                if (t % 7 == 0) b = Arrays.copyOf(b, random.nextInt(b.length));
+                Files.write(damaged, b);
+                try {
+                    PatchFileManager.load(damaged.toFile());
+                    try (PatchArchive.Reader reader = PatchArchive.open(damaged)) {
+                        for (PatchArchive.Entry e : reader.entries()) reader.read(e);
+                    }
+                } catch (IOException e) {
+                    rejected++;
+                } catch (RuntimeException | Error e) {
+                    throw new AssertionError("damaged archive #" + t + " : " + e, e);
+                }
+            }
+            check(rejected > 0, "no damaged archive was rejected");
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // ---------------------------------------------------------------- replay
+
+    /** 60000 recorded messages replayed without pacing: all delivered in order, none dropped. */
+    private static void replayNoDrop() throws Exception {
+        final int count = 60_000;
+        Path log = Files.createTempFile("check-replay", ".hmrl");
+        try {
+            try (MidiSessionRecorder recorder = new MidiSessionRecorder(log)) {
+                for (int i = 0; i < count; i++) {
+                    byte[] b = { (byte) 0xF0, 0x7D, (byte) (i >> 14 & 0x7F), (byte) (i >> 7 & 0x7F), (byte) (i & 0x7F), (byte) 0xF7 };
+                    recorder.recordIn(new SysexMessage(b, b.length));
+                    // the recorder drops when its writer lags: keep this side of its queue
+                    while (i - recorder.getRecordedCount() > 8192) Thread.sleep(1);
+                }
+                check(recorder.getDroppedCount() == 0, "recorder dropped " + recorder.getDroppedCount());
+            }
+
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger misordered = new AtomicInteger();
+            MidiInputReceiver receiver = new MidiInputReceiver(null);
+            try {
+                receiver.addSysexListener(data -> {
+                    int i = (data[2] & 0x7F) << 14 | (data[3] & 0x7F) << 7 | data[4] & 0x7F;
+                    if (i != next.getAndIncrement()) misordered.incrementAndGet();
+                });
+                MidiSessionReplayer.Stats stats = new MidiSessionReplayer(log).setSpeed(0).replay(receiver);
+                receiver.awaitDrained();
+                check(stats.getIncoming() == count, "replayed " + stats.getIncoming());
+                check(receiver.getDroppedCount() == 0, "receiver dropped " + receiver.getDroppedCount());
+                check(next.get() == count, "delivered " + next.get());
+                check(misordered.get() == 0, misordered.get() + " out of order");
+            } finally {
+                receiver.close();
+            }
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    /** Simulator registered as a port, with a session opened on it. */
+    private static final class Sim implements AutoCloseable {
+        final VirtualWavestationSR device;
+        final WavestationSession session;
+        final WavestationClient client;
+
+        Sim(int baud) throws Exception {
+            device = new VirtualWavestationSR("check-sim", Frames.DEVICE_ID);
+            device.setBaudRate(baud);
+            MidiManager.registerVirtualDevice(device);
+            session = WavestationSession.open(device.getDeviceInfo(), device.getDeviceInfo(), Frames.DEVICE_ID, null);
+            client = session.getClient();
+        }
+
+        @Override
+        public void close() {
+            session.close();
+            MidiManager.unregisterVirtualDevice(device);
+            device.shutdown();
+        }
+    }
+
+    private static byte[] program(int bank, int program) {
+        byte[] data = new byte[WavestationSysex.PROGRAM_SIZE];
+        Arrays.fill(data, (byte) program);
+        return WavestationSysex.buildFrame(DumpType.PROGRAM, Frames.DEVICE_ID, new int[] { bank, program }, data);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] b = new byte[buffer.remaining()];
+        buffer.duplicate().get(b);
+        return b;
+    }
+
+    private static Throwable failure(CompletableFuture<?> future, long timeoutMillis) throws Exception {
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+        throw new AssertionError("completed normally");
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMillis, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError(message);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
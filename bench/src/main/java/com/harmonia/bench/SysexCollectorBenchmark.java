@@ -0,0 +1,42 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.SysexDumpCollector;
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.WavestationSysex;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** Reassembly of a bank dump delivered in driver-sized packets. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SysexCollectorBenchmark {
+
+    @Param({ "64", "256", "1024" })
+    public int packetSize;
+
+    private final SysexDumpCollector collector = new SysexDumpCollector();
+    private byte[] header;
+    private byte[][] chunks;
+
+    @Setup
+    public void setup() {
+        header = WavestationSysex.dumpHeader(DumpType.BANK, Frames.DEVICE_ID);
+        chunks = Frames.chunks(Frames.bank(), packetSize);
+    }
+
+    @Benchmark
+    public ByteBuffer bankDump() {
+        collector.expect(header, DumpType.BANK.getFrameLength());
+        for (byte[] chunk : chunks) {
+            collector.onSysexReceived(chunk);
+            if (collector.isComplete()) break;
+        }
+        return collector.getDump();
+    }
+}
@@ -0,0 +1,68 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.MidiManager;
+import com.harmonia.wavestation.WavestationClient;
+import com.harmonia.wavestation.WavestationSession;
+import com.harmonia.wavestation.sim.VirtualWavestationSR;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dump round trips through a full {@link WavestationSession} against the
+ * in-process {@link VirtualWavestationSR}: request on the output thread,
+ * reply in F7 continuation packets, correlation and reassembly.
+ *
+ * With {@code baud = 0} the simulator answers at once and the host side is
+ * measured alone; with 31250 the times include the MIDI wire, so
+ * {@link #bankAsPrograms} shows what pipelining gains over lock-step requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WavestationClientBenchmark {
+
+    @Param({ "0", "31250" })
+    public int baud;
+
+    private VirtualWavestationSR sim;
+    private WavestationSession session;
+    private WavestationClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        sim = new VirtualWavestationSR("bench-sim", Frames.DEVICE_ID);
+        sim.setBaudRate(baud);
+        MidiManager.registerVirtualDevice(sim);
+        session = WavestationSession.open(sim.getDeviceInfo(), sim.getDeviceInfo(), Frames.DEVICE_ID, null);
+        client = session.getClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        MidiManager.unregisterVirtualDevice(sim);
+        sim.shutdown();
+    }
+
+    @Benchmark
+    public ByteBuffer programDump() throws Exception {
+        return client.dumpProgram(1, 5).get();
+    }
+
+    @Benchmark
+    public ByteBuffer bankDump() throws Exception {
+        return client.dumpBank(1).get();
+    }
+
+    /** The 35 programs of a bank requested back to back, replies correlated. */
+    @Benchmark
+    public List<ByteBuffer> bankAsPrograms() throws Exception {
+        return client.dumpPrograms(1).get();
+    }
+}
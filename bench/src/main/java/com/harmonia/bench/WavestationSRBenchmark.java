@@ -0,0 +1,48 @@
+package com.harmonia.bench;
+
+import com.harmonia.midi.SysexTransmitter;
+import com.harmonia.wavestation.WavestationSR;
+import com.harmonia.wavestation.WavestationSysex;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message construction in {@link WavestationSR} (wrapSysex and the
+ * transmitter), measured through the public send methods with an
+ * unthrottled transmitter and a receiver that drops everything.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavestationSRBenchmark {
+
+    private WavestationSR ws;
+    private int value;
+
+    @Setup
+    public void setup() {
+        Receiver sink = new Receiver() {
+            @Override public void send(MidiMessage message, long timeStamp) { }
+            @Override public void close() { }
+        };
+        SysexTransmitter transmitter = new SysexTransmitter(sink);
+        transmitter.setBytesPerSecond(Integer.MAX_VALUE);
+        ws = new WavestationSR(sink, Frames.DEVICE_ID, transmitter);
+    }
+
+    @Benchmark
+    public void parameterChange() throws Exception {
+        ws.sendParameterChange(0x10, value++ & 0x7F);
+    }
+
+    @Benchmark
+    public void programRequest() throws Exception {
+        ws.requestProgramDump(1, Math.floorMod(value++, WavestationSysex.PROGRAMS_PER_BANK));
+    }
+}
@@ -0,0 +1,14 @@
+package com.harmonia.midi;
+
+/**
+ * Where background MIDI threads (dispatch, scheduler, hot-plug polling)
+ * report the errors they cannot throw to a caller, e.g. the editor log.
+ */
+public interface ErrorListener {
+
+    /** Platform logger; the default until a listener is set. */
+    ErrorListener LOG = (message, error) ->
+            System.getLogger("com.harmonia.midi").log(System.Logger.Level.WARNING, message, error);
+
+    void onError(String message, Throwable error);
+}
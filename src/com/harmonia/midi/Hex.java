@@ -0,0 +1,51 @@
+package com.harmonia.midi;
+
+/**
+ * Table-based hex formatting of MIDI bytes ("F0 42 30 ...").
+ */
+public final class Hex {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private Hex() { }
+
+    /** Appends {@code len} bytes as "XX " groups. */
+    public static StringBuilder append(StringBuilder sb, byte[] data, int off, int len) {
+        sb.ensureCapacity(sb.length() + len * 3);
+        for (int i = off; i < off + len; i++) {
+            int b = data[i] & 0xFF;
+            sb.append(DIGITS[b >>> 4]).append(DIGITS[b & 0x0F]).append(' ');
+        }
+        return sb;
+    }
+
+    public static String toHex(byte[] data) {
+        return toHex(data, 0, data.length);
+    }
+
+    public static String toHex(byte[] data, int off, int len) {
+        char[] out = new char[len * 3];
+        for (int i = 0, j = 0; i < len; i++) {
+            int b = data[off + i] & 0xFF;
+            out[j++] = DIGITS[b >>> 4];
+            out[j++] = DIGITS[b & 0x0F];
+            out[j++] = ' ';
+        }
+        return new String(out);
+    }
+
+    /** Hex dump, {@code perLine} bytes per line, each line prefixed with its offset. */
+    public static String dump(byte[] data, int perLine) {
+        StringBuilder sb = new StringBuilder(data.length * 3 + (data.length / perLine + 1) * 8);
+        for (int off = 0; off < data.length; off += perLine) {
+            int o = off;
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                sb.append(DIGITS[(o >>> shift) & 0x0F]);
+            }
+            sb.append("  ");
+            append(sb, data, off, Math.min(perLine, data.length - off));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
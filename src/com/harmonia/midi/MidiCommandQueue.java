@@ -0,0 +1,73 @@
+package com.harmonia.midi;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-writer MIDI output queue.
+ *
+ * Commands run one after the other on a dedicated daemon thread, so blocking
+ * MIDI calls (pacing, ACK waits) never run on the caller's thread (the Swing
+ * EDT). Each submission returns a CompletableFuture; cancelling it removes a
+ * queued command or interrupts a running one.
+ */
+public class MidiCommandQueue implements AutoCloseable {
+
+    public interface Command<T> {
+        T run() throws Exception;
+    }
+
+    private final ExecutorService executor;
+
+    public MidiCommandQueue() {
+        this("midi-out");
+    }
+
+    public MidiCommandQueue(String threadName) {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Command<T> command) {
+        return submit(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submits a command with a timeout (0 = none). The timeout starts when the
+     * command starts running, time spent waiting in the queue is not counted.
+     */
+    public <T> CompletableFuture<T> submit(Command<T> command, long timeout, TimeUnit unit) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone()) return;   // cancelled while queued
+            if (timeout > 0) result.orTimeout(timeout, unit);
+            try {
+                result.complete(command.run());
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new CancellationException("Commande MIDI interrompue"));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        result.whenComplete((v, ex) -> {
+            // cancelled or timed out by the caller: drop or interrupt the command
+            if (ex instanceof CancellationException || ex instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,203 @@
+package com.harmonia.midi;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached list of MIDI devices.
+ *
+ * Enumeration (slow with many ALSA ports) happens once, then only on
+ * {@link #refresh} or from the hot-plug watcher, which diffs the device set
+ * and notifies listeners of added/removed ports. Each device gets a stable
+ * key that survives unplug/replug (the ALSA card number is not part of it),
+ * so a saved port choice can be found again.
+ */
+public class MidiDeviceRegistry {
+
+    /** One device of the snapshot. */
+    public static final class Device {
+        private final MidiDevice.Info info;
+        private final String key;
+        private final boolean input;
+        private final boolean output;
+
+        Device(MidiDevice.Info info, String key, boolean input, boolean output) {
+            this.info = info;
+            this.key = key;
+            this.input = input;
+            this.output = output;
+        }
+
+        public MidiDevice.Info getInfo() { return info; }
+        /** Stable identity, e.g. to store the last port used. */
+        public String getKey() { return key; }
+        /** Can be used as MIDI IN (has transmitters). */
+        public boolean isInput() { return input; }
+        /** Can be used as MIDI OUT (has receivers). */
+        public boolean isOutput() { return output; }
+
+        @Override
+        public String toString() {
+            return info.getName() + " - " + info.getDescription();
+        }
+    }
+
+    public interface DeviceListener {
+        /** Called on the thread that ran the refresh (the watcher thread for hot-plug). */
+        void onDevicesChanged(List<Device> added, List<Device> removed);
+    }
+
+    private static final MidiDeviceRegistry INSTANCE = new MidiDeviceRegistry();
+
+    public static MidiDeviceRegistry get() {
+        return INSTANCE;
+    }
+
+    private final List<DeviceListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile List<Device> devices;   // null until first enumeration
+    private volatile ErrorListener errorListener = ErrorListener.LOG;
+    private ScheduledExecutorService watcher;
+    private ScheduledFuture<?> watchTask;
+
+    private MidiDeviceRegistry() {
+    }
+
+    /** Current snapshot, enumerated on first call only. */
+    public List<Device> getDevices() {
+        List<Device> d = devices;
+        return d != null ? d : refresh();
+    }
+
+    public MidiDevice.Info[] getDeviceInfos() {
+        List<Device> d = getDevices();
+        MidiDevice.Info[] infos = new MidiDevice.Info[d.size()];
+        for (int i = 0; i < infos.length; i++) infos[i] = d.get(i).info;
+        return infos;
+    }
+
+    /** Device with this stable key in the current snapshot, or null. */
+    public Device find(String key) {
+        if (key == null) return null;
+        for (Device d : getDevices()) {
+            if (d.key.equals(key)) return d;
+        }
+        return null;
+    }
+
+    public Device find(MidiDevice.Info info) {
+        for (Device d : getDevices()) {
+            if (d.info.equals(info)) return d;
+        }
+        return null;
+    }
+
+    /** Enumerates again and notifies listeners if the set changed. */
+    public synchronized List<Device> refresh() {
+        List<Device> previous = devices;
+        List<Device> current = enumerate();
+        devices = current;
+        if (previous == null) return current;
+
+        Map<String, Device> before = index(previous);
+        Map<String, Device> after = index(current);
+        List<Device> added = new ArrayList<>();
+        List<Device> removed = new ArrayList<>();
+        for (Map.Entry<String, Device> e : after.entrySet()) {
+            if (!before.containsKey(e.getKey())) added.add(e.getValue());
+        }
+        for (Map.Entry<String, Device> e : before.entrySet()) {
+            if (!after.containsKey(e.getKey())) removed.add(e.getValue());
+        }
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            for (DeviceListener l : listeners) {
+                try {
+                    l.onDevicesChanged(Collections.unmodifiableList(added), Collections.unmodifiableList(removed));
+                } catch (RuntimeException e) {
+                    errorListener.onError("Erreur dans un listener de ports MIDI", e);
+                }
+            }
+        }
+        return current;
+    }
+
+    /** Receives listener and polling errors (hot-plug thread). */
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener != null ? listener : ErrorListener.LOG;
+    }
+
+    public void addListener(DeviceListener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(DeviceListener l) {
+        listeners.remove(l);
+    }
+
+    /** Polls the device set every {@code periodMillis} on a daemon thread. */
+    public synchronized void startWatching(long periodMillis) {
+        if (watcher == null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "midi-hotplug");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (watchTask != null) watchTask.cancel(false);
+        watchTask = watcher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                errorListener.onError("Erreur d'enumeration des ports MIDI", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watchTask != null) watchTask.cancel(false);
+        watchTask = null;
+    }
+
+    private static List<Device> enumerate() {
+        List<Device> list = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (MidiDevice.Info info : MidiManager.enumerateDevices()) {
+            boolean input = false;
+            boolean output = false;
+            try {
+                MidiDevice device = MidiManager.getMidiDevice(info);
+                input = device.getMaxTransmitters() != 0;
+                output = device.getMaxReceivers() != 0;
+            } catch (MidiUnavailableException | RuntimeException e) {
+                // listed but not usable right now
+            }
+            String base = stableName(info.getName()) + "|" + info.getVendor() + "|" + info.getDescription()
+                    + "|" + (input ? "in" : "") + (output ? "out" : "");
+            int n = seen.merge(base, 1, Integer::sum);   // identical ports: keep their order
+            list.add(new Device(info, base + "#" + n, input, output));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /** Device name without the ALSA address, which changes with the USB slot ("UM-ONE [hw:2,0,0]"). */
+    static String stableName(String name) {
+        int bracket = name.lastIndexOf(" [hw:");
+        return bracket > 0 && name.endsWith("]") ? name.substring(0, bracket) : name;
+    }
+
+    private static Map<String, Device> index(List<Device> list) {
+        Map<String, Device> map = new LinkedHashMap<>();
+        for (Device d : list) map.put(d.key, d);
+        return map;
+    }
+}
@@ -0,0 +1,70 @@
+package com.harmonia.midi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.MidiMessage;
+
+/**
+ * Bounded lock-free single-producer / single-consumer ring of MIDI events.
+ *
+ * The producer is the Java Sound driver thread: {@link #offer} never blocks
+ * nor allocates and simply fails when the ring is full.
+ */
+final class MidiEventRing {
+
+    interface Consumer {
+        void accept(MidiMessage message, long timeStamp);
+    }
+
+    private final MidiMessage[] messages;
+    private final long[] timeStamps;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();   // next slot to read (consumer)
+    private final AtomicLong tail = new AtomicLong();   // next slot to write (producer)
+
+    MidiEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        messages = new MidiMessage[size];
+        timeStamps = new long[size];
+        mask = size - 1;
+    }
+
+    /** Producer side. Returns false if the ring is full. */
+    boolean offer(MidiMessage message, long timeStamp) {
+        long t = tail.get();
+        if (t - head.get() == messages.length) return false;
+        int i = (int) t & mask;
+        messages[i] = message;
+        timeStamps[i] = timeStamp;
+        tail.set(t + 1);   // publish after the slot is written (full fence: the caller then reads the parked flag)
+        return true;
+    }
+
+    /** Consumer side. Hands at most {@code max} events to {@code consumer}, returns the count. */
+    int drain(Consumer consumer, int max) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int n = (int) Math.min(available, max);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (h + k) & mask;
+            MidiMessage m = messages[i];
+            messages[i] = null;
+            consumer.accept(m, timeStamps[i]);
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    int capacity() {
+        return messages.length;
+    }
+}
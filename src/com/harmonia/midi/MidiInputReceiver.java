@@ -1,16 +1,60 @@
 package com.harmonia.midi;
 
 import javax.sound.midi.*;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.SwingUtilities;
 
+/**
+ * Receiver plugged on the MIDI IN transmitter.
+ *
+ * {@link #send} runs on the Java Sound driver thread and only drops filtered
+ * traffic (clock, active sensing) and pushes the message into a bounded
+ * lock-free ring. A dispatch thread drains the ring, notifies the raw SysEx
+ * listeners and hands UI messages to the EDT in batches (one invokeLater per
+ * batch, not per message).
+ */
 public class MidiInputReceiver implements Receiver {
-    private final List<RawSysexListener> sysexListeners = new ArrayList<>();
+
+    private static final int RING_CAPACITY = 4096;
+    private static final int DRAIN_BATCH = 256;
+    private static final int MAX_UI_BACKLOG = 8192;
+
+    private static final RawSysexListener[] NO_LISTENERS = new RawSysexListener[0];
+
+    // copy-on-write snapshot, iterated without locking on the dispatch thread
+    private volatile RawSysexListener[] sysexListeners = NO_LISTENERS;
     private final MessageListener uiListener;
-    
+
+    private final boolean[] ignoredStatus = new boolean[256];
+    private final MidiEventRing ring = new MidiEventRing(RING_CAPACITY);
+    private final Thread dispatchThread;
+    private volatile boolean dispatcherParked;
+    private volatile boolean closed;
+    private volatile long droppedCount;   // written by the driver thread only
+    private volatile long queuedCount;    // written by the driver thread only
+    private volatile long dispatchedCount;   // written by the dispatch thread only
+    private final TransferMetrics metrics = TransferMetrics.get();
+    private volatile MidiSessionRecorder recorder;
+    private volatile ErrorListener errorListener = ErrorListener.LOG;
+
+    // UI batch handed over to the EDT
+    private final Object uiLock = new Object();
+    private List<UiEvent> uiBatch = new ArrayList<>();
+    private boolean uiFlushPosted;
+    private long uiDroppedCount;
+
+    private static final class UiEvent {
+        final MidiMessage message;
+        final long timeStamp;
+
+        UiEvent(MidiMessage message, long timeStamp) {
+            this.message = message;
+            this.timeStamp = timeStamp;
+        }
+    }
 
     public interface MessageListener {
         void onMidiMessage(MidiMessage msg, long timeStamp);
@@ -20,35 +64,168 @@ public class MidiInputReceiver implements Receiver {
         void onSysexReceived(byte[] data);
     }
 
+    /** @param uiListener notified on the EDT, may be null (headless use) */
     public MidiInputReceiver(MessageListener uiListener) {
         this.uiListener = uiListener;
+        setIgnored(ShortMessage.TIMING_CLOCK, true);
+        setIgnored(ShortMessage.ACTIVE_SENSING, true);
+
+        dispatchThread = new Thread(this::dispatchLoop, "midi-in-dispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
     }
 
-    public void addSysexListener(RawSysexListener l) {
-        sysexListeners.add(l);
+    public synchronized void addSysexListener(RawSysexListener l) {
+        RawSysexListener[] current = sysexListeners;
+        RawSysexListener[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = l;
+        sysexListeners = next;
+    }
+
+    /** Drops (or lets through) every message with this status byte before it is queued. */
+    public void setIgnored(int status, boolean ignored) {
+        ignoredStatus[status & 0xFF] = ignored;
+    }
+
+    /** Receives the exceptions thrown by SysEx listeners on the dispatch thread. */
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener != null ? listener : ErrorListener.LOG;
+    }
+
+    /** Records every incoming message into {@code recorder} (null to stop). */
+    public void setRecorder(MidiSessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /** Messages lost because the ring was full. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Messages waiting in the ring. */
+    public int getQueueDepth() {
+        return ring.size();
+    }
+
+    /**
+     * Blocks until the ring has room for one more message. For producers that
+     * may outrun the dispatch thread (replay without pacing); the driver
+     * thread never waits.
+     */
+    public void awaitCapacity() throws InterruptedException {
+        while (!closed && ring.size() >= RING_CAPACITY) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Blocks until every message queued so far has been handed to the SysEx
+     * listeners (the UI listener may still have a batch pending on the EDT),
+     * or until the receiver is closed.
+     */
+    public void awaitDrained() throws InterruptedException {
+        long target = queuedCount;
+        while (!closed && dispatchedCount < target) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(50_000);
+        }
     }
 
     @Override
     public void send(MidiMessage message, long timeStamp) {
-        // forward to UI in EDT
-        SwingUtilities.invokeLater(() -> uiListener.onMidiMessage(message, timeStamp));
+        if (closed) return;
+        metrics.messageIn(message.getLength());
+        MidiSessionRecorder r = recorder;
+        if (r != null) r.recordIn(message);   // everything, filtered traffic included
+        if (ignoredStatus[message.getStatus() & 0xFF]) return;
+
+        if (!ring.offer(message, timeStamp)) {
+            droppedCount++;
+            metrics.inputDropped();
+            return;
+        }
+        queuedCount++;
+        if (dispatcherParked) {
+            LockSupport.unpark(dispatchThread);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!closed) {
+            metrics.inputQueueDepth(ring.size());   // sampled here, off the driver thread
+            if (ring.drain(this::dispatch, DRAIN_BATCH) > 0) {
+                continue;
+            }
+            dispatcherParked = true;
+            if (ring.isEmpty() && !closed) {   // re-check after publishing the flag
+                LockSupport.park(this);
+            }
+            dispatcherParked = false;
+        }
+    }
+
+    private void dispatch(MidiMessage message, long timeStamp) {
+        try {
+            notifyListeners(message, timeStamp);
+        } finally {
+            dispatchedCount++;
+        }
+    }
 
-        // If SysEx, notify raw listeners and optionally save
+    private void notifyListeners(MidiMessage message, long timeStamp) {
+        // If SysEx, notify raw listeners with the raw bytes (status byte included:
+        // F0 for a new message, F7 for a continuation packet)
         if (message instanceof SysexMessage) {
-            SysexMessage sx = (SysexMessage) message;
-            byte[] data = sx.getData(); // does NOT include F0/F7
-            // wrap with F0/F7 if you want full
-            byte[] full = new byte[data.length + 2];
-            full[0] = (byte)0xF0;
-            System.arraycopy(data, 0, full, 1, data.length);
-            full[full.length - 1] = (byte)0xF7;
+            byte[] raw = message.getMessage();
 
             for (RawSysexListener l : sysexListeners) {
-                l.onSysexReceived(full);
+                try {
+                    l.onSysexReceived(raw);
+                } catch (RuntimeException e) {
+                    errorListener.onError("Erreur dans un listener SysEx", e);
+                }
+            }
+        }
+
+        // forward to UI in EDT, batched
+        if (uiListener != null) {
+            synchronized (uiLock) {
+                if (uiBatch.size() >= MAX_UI_BACKLOG) {
+                    uiDroppedCount++;
+                    return;
+                }
+                uiBatch.add(new UiEvent(message, timeStamp));
+                if (!uiFlushPosted) {
+                    uiFlushPosted = true;
+                    SwingUtilities.invokeLater(this::flushUi);
+                }
             }
         }
     }
 
+    private void flushUi() {
+        List<UiEvent> batch;
+        synchronized (uiLock) {
+            batch = uiBatch;
+            uiBatch = new ArrayList<>();
+            uiFlushPosted = false;
+        }
+        for (UiEvent e : batch) {
+            uiListener.onMidiMessage(e.message, e.timeStamp);
+        }
+    }
+
+    /** Messages not shown because the EDT was too far behind. */
+    public long getUiDroppedCount() {
+        synchronized (uiLock) {
+            return uiDroppedCount;
+        }
+    }
+
     @Override
-    public void close() { }
+    public void close() {
+        closed = true;
+        LockSupport.unpark(dispatchThread);
+    }
 }
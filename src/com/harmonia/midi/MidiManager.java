@@ -3,15 +3,49 @@ package com.harmonia.midi;
 import javax.sound.midi.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MidiManager {
     private MidiDevice inputDevice;
     private MidiDevice outputDevice;
     private Transmitter transmitter;
     private Receiver receiver;
+    private Receiver outReceiver;   // one per open output device, reused by every caller
+
+    // in-process devices (simulators) listed and opened like real ports
+    private static final List<MidiDevice> virtualDevices = new CopyOnWriteArrayList<>();
+
+    public static void registerVirtualDevice(MidiDevice device) {
+        virtualDevices.add(device);
+        MidiDeviceRegistry.get().refresh();
+    }
+
+    public static void unregisterVirtualDevice(MidiDevice device) {
+        virtualDevices.remove(device);
+        MidiDeviceRegistry.get().refresh();
+    }
+
+    public static MidiDevice getMidiDevice(MidiDevice.Info info) throws MidiUnavailableException {
+        for (MidiDevice d : virtualDevices) {
+            if (sameDevice(d.getDeviceInfo(), info)) return d;
+        }
+        return MidiSystem.getMidiDevice(info);
+    }
+
+    /**
+     * Whether two infos name the same port. {@code MidiDevice.Info.equals} is
+     * identity, and a provider may hand out fresh instances on each
+     * enumeration, so the descriptive fields are compared instead.
+     */
+    public static boolean sameDevice(MidiDevice.Info a, MidiDevice.Info b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.getName().equals(b.getName()) && a.getVendor().equals(b.getVendor())
+                && a.getDescription().equals(b.getDescription()) && a.getVersion().equals(b.getVersion());
+    }
 
     public static String[] listDevices() {
-        MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+        MidiDevice.Info[] infos = getDeviceInfos();
         List<String> names = new ArrayList<>();
         for (MidiDevice.Info info : infos) {
             names.add(info.getName() + " - " + info.getDescription());
@@ -19,48 +53,95 @@ public class MidiManager {
         return names.toArray(new String[0]);
     }
 
+    /** Cached list, see {@link MidiDeviceRegistry}. */
     public static MidiDevice.Info[] getDeviceInfos() {
-        return MidiSystem.getMidiDeviceInfo();
+        return MidiDeviceRegistry.get().getDeviceInfos();
+    }
+
+    // full enumeration, system + virtual devices
+    static MidiDevice.Info[] enumerateDevices() {
+        MidiDevice.Info[] system = MidiSystem.getMidiDeviceInfo();
+        if (virtualDevices.isEmpty()) return system;
+        List<MidiDevice.Info> all = new ArrayList<>(List.of(system));
+        for (MidiDevice d : virtualDevices) {
+            all.add(d.getDeviceInfo());
+        }
+        return all.toArray(new MidiDevice.Info[0]);
     }
 
     public void openInput(MidiDevice.Info info, Receiver rx) throws MidiUnavailableException {
         closeInput();
-        inputDevice = MidiSystem.getMidiDevice(info);
-        if (!inputDevice.isOpen()) inputDevice.open();
-        transmitter = inputDevice.getTransmitter();
+        try {
+            inputDevice = getMidiDevice(info);
+            if (!inputDevice.isOpen()) inputDevice.open();
+            transmitter = inputDevice.getTransmitter();
+        } catch (MidiUnavailableException | RuntimeException e) {
+            TransferMetrics.get().portError();
+            throw e;
+        }
         transmitter.setReceiver(rx);
         receiver = rx;
+        TransferMetrics.get().portOpened();
     }
 
     public void openOutput(MidiDevice.Info info, Receiver dummy) throws MidiUnavailableException {
         closeOutput();
-        outputDevice = MidiSystem.getMidiDevice(info);
-        if (!outputDevice.isOpen()) outputDevice.open();
+        try {
+            outputDevice = getMidiDevice(info);
+            if (!outputDevice.isOpen()) outputDevice.open();
+        } catch (MidiUnavailableException | RuntimeException e) {
+            TransferMetrics.get().portError();
+            throw e;
+        }
+        TransferMetrics.get().portOpened();
         // We'll obtain Receiver from device
         //receiver = outputDevice.getReceiver(); // ADDED BY OLIVIER 16-Jan-2026
     }
 
+    /** The output device's receiver, opened once and shared until {@link #closeOutput}. */
     public Receiver getOutputReceiver(MidiDevice.Info info) throws MidiUnavailableException {
-        if (outputDevice == null || !outputDevice.isOpen() || outputDevice.getDeviceInfo() != info) {
+        if (outReceiver != null && outputDevice != null && outputDevice.isOpen()
+                && sameDevice(outputDevice.getDeviceInfo(), info)) {
+            return outReceiver;
+        }
+        if (outputDevice == null || !outputDevice.isOpen() || !sameDevice(outputDevice.getDeviceInfo(), info)) {
             // open it
-            if (outputDevice != null && outputDevice.isOpen()) outputDevice.close();
-            outputDevice = MidiSystem.getMidiDevice(info);
-            outputDevice.open();
+            closeOutput();
+            try {
+                outputDevice = getMidiDevice(info);
+                if (!outputDevice.isOpen()) outputDevice.open();
+            } catch (MidiUnavailableException | RuntimeException e) {
+                TransferMetrics.get().portError();
+                throw e;
+            }
+            TransferMetrics.get().portOpened();
         }
-        return outputDevice.getReceiver();
+        outReceiver = outputDevice.getReceiver();
+        return outReceiver;
+    }
+
+    /** Open output device, null if none (clock for {@link MidiOutputScheduler}). */
+    public MidiDevice getOutputDevice() {
+        return outputDevice;
     }
 
     public void closeInput() {
         try {
-            if (transmitter != null) transmitter.setReceiver(null);
+            if (transmitter != null) {
+                transmitter.setReceiver(null);
+                transmitter.close();
+            }
         } catch (Exception ignored) {}
-        if (inputDevice != null && inputDevice.isOpen()) inputDevice.close();
+        if (inputDevice != null && inputDevice.isOpen() && inputDevice != outputDevice) inputDevice.close();
         transmitter = null;
+        receiver = null;
         inputDevice = null;
     }
 
     public void closeOutput() {
-        if (outputDevice != null && outputDevice.isOpen()) outputDevice.close();
+        if (outReceiver != null) outReceiver.close();
+        outReceiver = null;
+        if (outputDevice != null && outputDevice.isOpen() && outputDevice != inputDevice) outputDevice.close();
         outputDevice = null;
     }
 
@@ -0,0 +1,193 @@
+package com.harmonia.midi;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Releases outgoing MIDI messages at precise times.
+ *
+ * Messages are queued with a due time (System.nanoTime() base) in a priority
+ * queue, FIFO for equal times. A dedicated thread hands each one to the
+ * receiver:
+ * <ul>
+ * <li>with device timestamps enabled, {@link #getLeadMicros} ahead of time,
+ * stamped with the matching {@link MidiDevice#getMicrosecondPosition} so the
+ * driver places it on the wire;</li>
+ * <li>otherwise (most drivers ignore timestamps) exactly on time, by parking
+ * until shortly before the deadline and spinning the last microseconds.</li>
+ * </ul>
+ */
+public class MidiOutputScheduler implements AutoCloseable {
+
+    /** Below this, park is too coarse: spin instead. */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DEFAULT_LEAD_MICROS = 2000;
+
+    private static final class Scheduled implements Comparable<Scheduled> {
+        final MidiMessage message;
+        final long dueNanos;
+        final long seq;
+        final Object owner;
+
+        Scheduled(MidiMessage message, long dueNanos, long seq, Object owner) {
+            this.message = message;
+            this.dueNanos = dueNanos;
+            this.seq = seq;
+            this.owner = owner;
+        }
+
+        @Override
+        public int compareTo(Scheduled o) {
+            int c = Long.compare(dueNanos - o.dueNanos, 0);   // nanoTime may wrap
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final Receiver receiver;
+    private final MidiDevice clock;   // null: no device time available
+    private final PriorityQueue<Scheduled> queue = new PriorityQueue<>();
+    private final Thread thread;
+    private long seq;
+    private volatile boolean deviceTimestamps;
+    private volatile long leadNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_LEAD_MICROS);
+    private volatile boolean closed;
+    private volatile ErrorListener errorListener = ErrorListener.LOG;
+
+    /** @param clock device providing the timestamp base, may be null */
+    public MidiOutputScheduler(Receiver receiver, MidiDevice clock) {
+        this.receiver = receiver;
+        this.clock = clock;
+        thread = new Thread(this::run, "midi-out-scheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stamps messages with device time and hands them over ahead of time.
+     * Only useful with drivers that honour timestamps; ignored if the device
+     * has no clock (getMicrosecondPosition() == -1).
+     */
+    public void setDeviceTimestamps(boolean enabled) {
+        deviceTimestamps = enabled && clock != null && clock.getMicrosecondPosition() >= 0;
+    }
+
+    public boolean isDeviceTimestamps() {
+        return deviceTimestamps;
+    }
+
+    /** Receives the exceptions thrown by the receiver on the scheduler thread. */
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener != null ? listener : ErrorListener.LOG;
+    }
+
+    public long getLeadMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(leadNanos);
+    }
+
+    public void setLeadMicros(long micros) {
+        leadNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    /** Sends {@code message} at {@code dueNanos} (System.nanoTime() base). */
+    public void schedule(MidiMessage message, long dueNanos) {
+        schedule(message, dueNanos, null);
+    }
+
+    /** Same, tagged with {@code owner} so that {@link #cancel} can withdraw it. */
+    public synchronized void schedule(MidiMessage message, long dueNanos, Object owner) {
+        if (closed) return;
+        Scheduled s = new Scheduled(message, dueNanos, seq++, owner);
+        queue.add(s);
+        if (queue.peek() == s) LockSupport.unpark(thread);   // new earliest deadline
+    }
+
+    /** Removes the messages of {@code owner} not handed to the driver yet; returns their count. */
+    public synchronized int cancel(Object owner) {
+        int removed = 0;
+        for (Iterator<Scheduled> it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().owner == owner) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int getPendingCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (!closed) {
+            Scheduled next;
+            synchronized (this) {
+                next = queue.peek();
+            }
+            if (next == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            boolean stamped = deviceTimestamps;
+            long releaseAt = stamped ? next.dueNanos - leadNanos : next.dueNanos;
+            long wait = releaseAt - System.nanoTime();
+            if (wait > SPIN_NANOS) {
+                LockSupport.parkNanos(this, wait - SPIN_NANOS);
+                continue;   // woken early or by an earlier message: look again
+            }
+
+            synchronized (this) {
+                if (queue.peek() != next) continue;   // cancelled or overtaken meanwhile
+                queue.poll();
+            }
+            if (!stamped) spinUntil(releaseAt);
+
+            long timeStamp = -1;
+            if (stamped) {
+                long ahead = Math.max(0, next.dueNanos - System.nanoTime());
+                timeStamp = clock.getMicrosecondPosition() + TimeUnit.NANOSECONDS.toMicros(ahead);
+            }
+            try {
+                receiver.send(next.message, timeStamp);
+            } catch (RuntimeException e) {
+                errorListener.onError("Erreur d'envoi MIDI planifie", e);
+            }
+        }
+    }
+
+    /** Blocks until {@code deadline} (System.nanoTime() base) with sub-millisecond accuracy. */
+    public static void parkUntil(long deadline) throws InterruptedException {
+        while (true) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return;
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (left > SPIN_NANOS) {
+                LockSupport.parkNanos(left - SPIN_NANOS);
+            } else {
+                spinUntil(deadline);
+                return;
+            }
+        }
+    }
+
+    private static void spinUntil(long deadline) {
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            queue.clear();
+        }
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,205 @@
+package com.harmonia.midi;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every incoming and outgoing MIDI message into a binary log.
+ *
+ * <pre>
+ * "HMRL" version(1) startMillis(8)
+ * record : direction(1: 0 in, 1 out) deltaNanos(varint) length(varint) bytes
+ * </pre>
+ *
+ * {@link #recordIn}/{@link #recordOut} only copy the bytes and queue them;
+ * a writer thread encodes the records into a 64 KB buffer and appends it to
+ * the file through a FileChannel. If the writer falls behind, records are
+ * dropped and counted rather than blocking the MIDI driver.
+ * Logs are read back with {@link MidiSessionReplayer}.
+ */
+public class MidiSessionRecorder implements AutoCloseable {
+
+    static final byte[] MAGIC = { 'H', 'M', 'R', 'L' };
+    static final int VERSION = 1;
+    static final int IN = 0;
+    static final int OUT = 1;
+    /** Longest message recorded (longer ones are dropped); the replayer rejects anything above. */
+    static final int MAX_RECORD_LENGTH = 8 * 1024 * 1024;
+
+    private static final int QUEUE_CAPACITY = 16384;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_MILLIS = 200;
+
+    private static final class Record {
+        final int direction;
+        final long nanos;
+        final byte[] data;
+
+        Record(int direction, long nanos, byte[] data) {
+            this.direction = direction;
+            this.nanos = nanos;
+            this.data = data;
+        }
+    }
+
+    /** Receiver wrapper recording what is sent through it while a recorder is set. */
+    public static final class OutputTap implements Receiver {
+        private final Receiver target;
+        private volatile MidiSessionRecorder recorder;
+
+        public OutputTap(Receiver target) {
+            this.target = target;
+        }
+
+        public void setRecorder(MidiSessionRecorder recorder) {
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            MidiSessionRecorder r = recorder;
+            if (r != null) r.recordOut(message);
+            target.send(message, timeStamp);
+        }
+
+        @Override
+        public void close() {
+            target.close();
+        }
+    }
+
+    private final FileChannel channel;
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread writer;
+    private long lastNanos = System.nanoTime();
+    private volatile boolean closed;
+    private final LongAdder dropped = new LongAdder();
+    private volatile long recorded;
+    private IOException failure;
+
+    public MidiSessionRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.put(MAGIC).put((byte) VERSION).putLong(System.currentTimeMillis());
+        writer = new Thread(this::writeLoop, "midi-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void recordIn(MidiMessage message) {
+        record(IN, message);
+    }
+
+    public void recordOut(MidiMessage message) {
+        record(OUT, message);
+    }
+
+    private void record(int direction, MidiMessage message) {
+        if (closed) return;
+        if (message.getLength() > MAX_RECORD_LENGTH || !queue.offer(new Record(direction, System.nanoTime(), message.getMessage()))) {
+            dropped.increment();
+        }
+    }
+
+    /** Records lost because the writer could not keep up (or too long to record). */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>(256);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Record first = queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, 255);
+                    for (Record r : batch) encode(r);
+                    recorded += batch.size();
+                    batch.clear();
+                }
+                flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+            queue.clear();
+        } catch (InterruptedException e) {
+            // close() waits for us: just stop
+        }
+    }
+
+    private void encode(Record r) throws IOException {
+        if (buffer.remaining() < 1 + 10 + 5 + r.data.length) {
+            flush();
+            if (buffer.remaining() < 1 + 10 + 5 + r.data.length) {
+                // larger than the buffer: written directly
+                writeFully(header(r));
+                writeFully(ByteBuffer.wrap(r.data));
+                lastNanos = r.nanos;
+                return;
+            }
+        }
+        buffer.put((byte) r.direction);
+        putVarLong(buffer, r.nanos - lastNanos);
+        putVarLong(buffer, r.data.length);
+        buffer.put(r.data);
+        lastNanos = r.nanos;
+    }
+
+    private ByteBuffer header(Record r) {
+        ByteBuffer h = ByteBuffer.allocate(16);
+        h.put((byte) r.direction);
+        putVarLong(h, r.nanos - lastNanos);
+        putVarLong(h, r.data.length);
+        h.flip();
+        return h;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) channel.write(b);
+    }
+
+    static void putVarLong(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    /** Writes what is queued and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+}
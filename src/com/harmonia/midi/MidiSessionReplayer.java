@@ -0,0 +1,159 @@
+package com.harmonia.midi;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.SysexMessage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays a {@link MidiSessionRecorder} log back into a Receiver, typically a
+ * {@link MidiInputReceiver} with its usual SysEx listeners (collector,
+ * correlator), to reproduce and profile a captured session.
+ *
+ * Speed 1 keeps the recorded timing, 2 plays twice as fast, 0 plays as fast
+ * as possible (waiting for ring space when the target is a
+ * {@link MidiInputReceiver}, so nothing is dropped). Outgoing records are
+ * skipped unless a receiver is given for them.
+ */
+public class MidiSessionReplayer {
+
+    /** What was played. */
+    public static final class Stats {
+        private long incoming;
+        private long outgoing;
+        private long bytes;
+        private long recordedNanos;
+        private long millis;
+
+        public long getIncoming() { return incoming; }
+        public long getOutgoing() { return outgoing; }
+        public long getBytes() { return bytes; }
+        /** Duration of the captured session. */
+        public long getRecordedMillis() { return recordedNanos / 1_000_000; }
+        public long getMillis() { return millis; }
+
+        @Override
+        public String toString() {
+            return String.format("%d messages recus, %d envoyes, %d octets ; session de %d ms rejouee en %d ms",
+                    incoming, outgoing, bytes, getRecordedMillis(), millis);
+        }
+    }
+
+    // any message type, as recorded
+    private static final class RawMessage extends MidiMessage {
+        RawMessage(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public Object clone() {
+            return new RawMessage(getMessage());
+        }
+    }
+
+    private final Path file;
+    private double speed = 1.0;
+    private Receiver outgoingTarget;
+
+    public MidiSessionReplayer(Path file) {
+        this.file = file;
+    }
+
+    /** 1 = recorded timing, 0 = as fast as possible. */
+    public MidiSessionReplayer setSpeed(double speed) {
+        if (speed < 0) throw new IllegalArgumentException("speed < 0");
+        this.speed = speed;
+        return this;
+    }
+
+    /** Where to play the outgoing records (null: skipped). */
+    public MidiSessionReplayer setOutgoingTarget(Receiver target) {
+        this.outgoingTarget = target;
+        return this;
+    }
+
+    /** Plays the log into {@code incomingTarget}; blocks until the end. */
+    public Stats replay(Receiver incomingTarget) throws IOException, InterruptedException {
+        Stats stats = new Stats();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            byte[] magic = new byte[MidiSessionRecorder.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MidiSessionRecorder.MAGIC)) throw new IOException("Pas un enregistrement MIDI");
+            int version = in.readUnsignedByte();
+            if (version != MidiSessionRecorder.VERSION) throw new IOException("Version inconnue : " + version);
+            in.readLong();   // wall-clock start
+
+            long start = System.nanoTime();
+            long offset = 0;
+            while (true) {
+                int direction = in.read();
+                if (direction < 0) break;
+                if (direction != MidiSessionRecorder.IN && direction != MidiSessionRecorder.OUT) {
+                    throw new IOException("Enregistrement corrompu");
+                }
+                byte[] data;
+                try {
+                    offset += checkLength(readVarLong(in), Long.MAX_VALUE - offset);
+                    data = new byte[(int) checkLength(readVarLong(in), MidiSessionRecorder.MAX_RECORD_LENGTH)];
+                    in.readFully(data);
+                } catch (EOFException e) {
+                    break;   // last record cut by a crash: keep what was read
+                }
+
+                Receiver target = direction == MidiSessionRecorder.IN ? incomingTarget : outgoingTarget;
+                if (target == null) continue;
+                if (speed > 0) {
+                    MidiOutputScheduler.parkUntil(start + (long) (offset / speed));
+                } else if (target instanceof MidiInputReceiver) {
+                    ((MidiInputReceiver) target).awaitCapacity();   // unpaced: never overrun the ring
+                }
+                target.send(toMessage(data), -1);
+                if (direction == MidiSessionRecorder.IN) stats.incoming++;
+                else stats.outgoing++;
+                stats.bytes += data.length;
+            }
+            stats.recordedNanos = offset;
+            stats.millis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return stats;
+    }
+
+    static MidiMessage toMessage(byte[] data) throws IOException {
+        int status = data.length == 0 ? 0 : data[0] & 0xFF;
+        if (status == 0xF0 || status == 0xF7) {
+            try {
+                SysexMessage msg = new SysexMessage();
+                msg.setMessage(data, data.length);
+                return msg;
+            } catch (InvalidMidiDataException e) {
+                throw new IOException(e);
+            }
+        }
+        return new RawMessage(data);
+    }
+
+    private static long checkLength(long value, long max) throws IOException {
+        if (value < 0 || value > max) throw new IOException("Enregistrement corrompu");
+        return value;
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Entier mal forme");
+    }
+}
@@ -0,0 +1,111 @@
+package com.harmonia.midi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalescing sender for real-time parameter edits.
+ *
+ * {@link #set(int, int)} only records the latest value of a parameter and
+ * returns immediately; a background thread sends pending parameters at most
+ * {@code maxRate} messages per second. Intermediate values of a parameter
+ * that changes faster than that are dropped, so the synth follows the
+ * control with bounded latency. Parameters are served in the order they were
+ * first touched, so one busy control cannot starve the others.
+ */
+public class ParameterStreamer implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_RATE = 50;   // messages / s
+
+    public interface Sink {
+        void send(int paramId, int value) throws Exception;
+    }
+
+    private final Sink sink;
+    private final Consumer<Exception> errorHandler;
+    private final Map<Integer, Integer> pending = new LinkedHashMap<>();
+    private final Thread thread;
+
+    private volatile long minIntervalNanos;
+    private boolean closed;
+
+    public ParameterStreamer(Sink sink, Consumer<Exception> errorHandler) {
+        this(sink, errorHandler, DEFAULT_MAX_RATE);
+    }
+
+    public ParameterStreamer(Sink sink, Consumer<Exception> errorHandler, int maxRate) {
+        this.sink = sink;
+        this.errorHandler = errorHandler;
+        setMaxRate(maxRate);
+        thread = new Thread(this::run, "midi-param-streamer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void setMaxRate(int messagesPerSecond) {
+        if (messagesPerSecond <= 0) throw new IllegalArgumentException("maxRate <= 0");
+        minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+    }
+
+    /** Records the latest value of {@code paramId}; never blocks. */
+    public synchronized void set(int paramId, int value) {
+        if (closed) return;
+        pending.put(paramId, value);   // keeps its place in the queue if already pending
+        notifyAll();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void run() {
+        while (true) {
+            int paramId;
+            int value;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                Iterator<Map.Entry<Integer, Integer>> it = pending.entrySet().iterator();
+                Map.Entry<Integer, Integer> next = it.next();
+                paramId = next.getKey();
+                value = next.getValue();
+                it.remove();
+            }
+
+            long sentAt = System.nanoTime();
+            try {
+                sink.send(paramId, value);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                errorHandler.accept(e);
+            }
+
+            // rate limit: values set meanwhile are coalesced in 'pending'
+            try {
+                MidiOutputScheduler.parkUntil(sentAt + minIntervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+            notifyAll();
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,167 @@
+package com.harmonia.midi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming SysEx assembler backed by a growable, reusable ByteBuffer.
+ *
+ * Chunks are appended as they arrive from the driver: F0 starts a message,
+ * F7 at the start of a chunk while a message is open is a continuation packet
+ * (its status byte is dropped). Completion is tracked incrementally, so
+ * {@link #isComplete()} is O(1) whatever the size of the dump.
+ */
+public class SysexAssembler {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private ByteBuffer buffer;
+    private boolean viewLeased;    // a view of the current buffer has been handed out
+
+    private byte[] header;
+    private int expectedLength = -1;
+    private boolean inMessage;     // an F0 has been received, F7 not yet
+    private boolean complete;
+    private boolean overflow;
+
+    public SysexAssembler() {
+        buffer = ByteBuffer.allocate(MIN_CAPACITY);
+    }
+
+    /** Resets with no expectation: complete on the first F0 .. F7 message. */
+    public void reset() {
+        reset(null, -1);
+    }
+
+    /**
+     * Resets the assembler for a frame starting with {@code header} and
+     * {@code expectedLength} bytes long (-1 when unknown). The buffer is kept
+     * unless a view of it is still in use by a caller.
+     */
+    public void reset(byte[] header, int expectedLength) {
+        int capacity = Math.max(MIN_CAPACITY, expectedLength);
+        if (viewLeased || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+            viewLeased = false;
+        } else {
+            buffer.clear();
+        }
+        this.header = header;
+        this.expectedLength = expectedLength;
+        inMessage = false;
+        complete = false;
+        overflow = false;
+    }
+
+    /**
+     * Appends a raw chunk (status byte included).
+     * Returns false if the chunk was ignored (does not belong to the expected frame).
+     */
+    public boolean append(byte[] chunk) {
+        return append(chunk, 0, chunk.length);
+    }
+
+    public boolean append(byte[] chunk, int offset, int length) {
+        if (length <= 0 || complete || overflow) return false;
+        int status = chunk[offset] & 0xFF;
+
+        if (status == 0xF7 && inMessage) {
+            // continuation packet: F7 <data...> [F7] ; a lone F7 terminates the message
+            if (length == 1) {
+                put(chunk, offset, 1);
+            } else {
+                put(chunk, offset + 1, length - 1);
+            }
+        } else if (status == 0xF0) {
+            if (buffer.position() == 0 && header != null && !matchesHeader(chunk, offset, length)) {
+                return false;
+            }
+            inMessage = true;
+            put(chunk, offset, length);
+        } else {
+            return false;
+        }
+
+        if (buffer.get(buffer.position() - 1) == (byte) 0xF7) {
+            inMessage = false;
+        }
+        updateState();
+        return true;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** True between an F0 and its terminating F7. */
+    public boolean isMessageOpen() {
+        return inMessage;
+    }
+
+    /** True if more bytes than expected were received. */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public int getExpectedLength() {
+        return expectedLength;
+    }
+
+    /**
+     * Read-only view of the bytes assembled so far (no copy). The view stays
+     * valid after the next reset: the assembler then switches to a new buffer.
+     */
+    public ByteBuffer view() {
+        ByteBuffer v = buffer.duplicate();
+        v.flip();
+        viewLeased = true;
+        return v.asReadOnlyBuffer();
+    }
+
+    public byte[] toByteArray() {
+        byte[] out = new byte[buffer.position()];
+        buffer.duplicate().flip().get(out);
+        return out;
+    }
+
+    private void put(byte[] src, int offset, int length) {
+        if (buffer.remaining() < length) {
+            grow(buffer.position() + length);
+        }
+        buffer.put(src, offset, length);
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, buffer.capacity() * 2);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+        viewLeased = false;
+    }
+
+    private void updateState() {
+        int size = buffer.position();
+        if (expectedLength > 0) {
+            if (size > expectedLength) {
+                overflow = true;
+            } else if (size == expectedLength) {
+                complete = !inMessage && buffer.get(0) == (byte) 0xF0;
+            }
+        } else {
+            complete = !inMessage && buffer.get(0) == (byte) 0xF0;
+        }
+    }
+
+    private boolean matchesHeader(byte[] chunk, int offset, int length) {
+        // the first chunk of a Wavestation frame always carries the whole header
+        if (length < header.length) return false;
+        for (int i = 0; i < header.length; i++) {
+            if (chunk[offset + i] != header[i]) return false;
+        }
+        return true;
+    }
+}
@@ -1,38 +1,104 @@
 package com.harmonia.midi;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public class SysexDumpCollector {
 
-    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final SysexAssembler assembler = new SysexAssembler();
     private boolean collecting = false;
+    private CompletableFuture<ByteBuffer> pending;
+    private long expectedSince;   // nanoTime of expect()
 
-    public void start() {
-        buffer.reset();
+    public synchronized void start() {
+        cancelPending();
+        assembler.reset();
         collecting = true;
     }
 
-    public void stop() {
+    /**
+     * Starts collecting and returns a future completed with the dump as soon as
+     * a frame starting with {@code header}, {@code expectedLength} bytes long
+     * and terminated by F7 has arrived. SysEx not starting with the header
+     * (ACKs, other traffic) is ignored while waiting for the frame.
+     *
+     * The future is completed with a read-only view of the assembled frame.
+     */
+    public synchronized CompletableFuture<ByteBuffer> expect(byte[] header, int expectedLength) {
+        cancelPending();
+        assembler.reset(header.clone(), expectedLength);
+        collecting = true;
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        future.whenComplete((data, ex) -> release(future));
+        pending = future;
+        expectedSince = System.nanoTime();
+        return future;
+    }
+
+    public synchronized void stop() {
         collecting = false;
+        cancelPending();
     }
 
-    public boolean isCollecting() {
+    public synchronized boolean isCollecting() {
         return collecting;
     }
 
-    public void onSysexReceived(byte[] fullSysex) {
+    /** Raw SysEx chunk, status byte included (F0 new message, F7 continuation). */
+    public synchronized void onSysexReceived(byte[] sysex) {
         if (!collecting) return;
-        buffer.writeBytes(fullSysex);
+        if (!assembler.append(sysex)) return;
+        if (pending == null) return;
+
+        if (assembler.isComplete()) {
+            complete(null);
+        } else if (assembler.isOverflow()) {
+            complete(new IOException("Dump inattendu : plus de "
+                    + assembler.getExpectedLength() + " octets"));
+        } else if (!assembler.isMessageOpen()) {
+            complete(new IOException("Dump tronque : " + assembler.size()
+                    + " octets au lieu de " + assembler.getExpectedLength()));
+        }
+    }
+
+    public synchronized byte[] getFullDump() {
+        return assembler.toByteArray();
+    }
+
+    /** Read-only view of the dump, no copy. */
+    public synchronized ByteBuffer getDump() {
+        return assembler.view();
+    }
+
+    public synchronized boolean isComplete() {
+        return assembler.isComplete();
+    }
+
+    private void complete(Exception error) {
+        CompletableFuture<ByteBuffer> future = pending;
+        pending = null;
+        collecting = false;
+        if (error != null) {
+            TransferMetrics.get().dumpIncomplete();
+            future.completeExceptionally(error);
+        } else {
+            TransferMetrics.get().dumpCompleted(System.nanoTime() - expectedSince, assembler.size());
+            future.complete(assembler.view());
+        }
     }
 
-    public byte[] getFullDump() {
-        return buffer.toByteArray();
+    // timeout or cancellation from the caller side
+    private synchronized void release(CompletableFuture<ByteBuffer> future) {
+        if (pending == future) {
+            pending = null;
+            collecting = false;
+        }
     }
 
-    public boolean isComplete() {
-        byte[] data = buffer.toByteArray();
-        return data.length > 0 &&
-               data[0] == (byte)0xF0 &&
-               data[data.length - 1] == (byte)0xF7;
+    private void cancelPending() {
+        CompletableFuture<ByteBuffer> future = pending;
+        pending = null;
+        if (future != null) future.cancel(false);
     }
 }
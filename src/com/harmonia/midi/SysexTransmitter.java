@@ -0,0 +1,119 @@
+package com.harmonia.midi;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.SysexMessage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paced SysEx output.
+ *
+ * Large dumps are split into chunks (the first one starting with F0, the
+ * following ones sent as F7 continuation packets) and every message is
+ * released at the configured byte rate, so a slow interface never receives
+ * more than it can put on the wire. A small message costs its own wire time
+ * instead of a fixed safety delay.
+ *
+ * With a {@link MidiOutputScheduler} the chunks are queued at once, each at
+ * the exact time its wire slot starts, and {@link #send} returns without
+ * sleeping; without one the calling thread waits between chunks.
+ */
+public class SysexTransmitter {
+
+    public static final int DEFAULT_BAUD = 31250;
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final Receiver receiver;
+    private final MidiOutputScheduler scheduler;   // null: paced by the calling thread
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int bytesPerSecond = DEFAULT_BAUD / 10;   // start + 8 data + stop bits
+
+    private long wireFreeAt = System.nanoTime();      // when the previous bytes have left the wire
+
+    public SysexTransmitter(Receiver receiver) {
+        this(receiver, null);
+    }
+
+    public SysexTransmitter(Receiver receiver, MidiOutputScheduler scheduler) {
+        this.receiver = receiver;
+        this.scheduler = scheduler;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 16) throw new IllegalArgumentException("chunkSize < 16");
+        this.chunkSize = chunkSize;
+    }
+
+    public int getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(int bytesPerSecond) {
+        if (bytesPerSecond <= 0) throw new IllegalArgumentException("bytesPerSecond <= 0");
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public void setBaudRate(int baud) {
+        setBytesPerSecond(baud / 10);
+    }
+
+    /** Sends a complete F0 .. F7 message, split into paced chunks if needed. */
+    public synchronized void send(byte[] sysex) throws InvalidMidiDataException, InterruptedException {
+        TransferMetrics.get().messageOut(sysex.length);
+        if (sysex.length <= chunkSize) {
+            sendChunk(sysex, sysex.length);
+            return;
+        }
+
+        byte[] chunk = new byte[chunkSize + 1];
+        sendChunk(Arrays.copyOf(sysex, chunkSize), chunkSize);
+        for (int pos = chunkSize; pos < sysex.length; pos += chunkSize) {
+            int len = Math.min(chunkSize, sysex.length - pos);
+            if (scheduler != null) chunk = new byte[len + 1];   // queued, cannot be reused
+            chunk[0] = (byte) 0xF7;   // continuation packet
+            System.arraycopy(sysex, pos, chunk, 1, len);
+            sendChunk(chunk, len + 1);
+        }
+    }
+
+    /** Withdraws the chunks still queued in the scheduler (after a timeout or cancel). */
+    public synchronized void abort() {
+        if (scheduler != null && scheduler.cancel(this) > 0) {
+            wireFreeAt = System.nanoTime();
+        }
+    }
+
+    /** Blocks until everything sent so far has left the wire. */
+    public synchronized void drain() throws InterruptedException {
+        waitUntil(wireFreeAt);
+    }
+
+    /** Time left before the wire is idle, in milliseconds. */
+    public synchronized long getPendingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(wireFreeAt - System.nanoTime()));
+    }
+
+    private void sendChunk(byte[] data, int length) throws InvalidMidiDataException, InterruptedException {
+        SysexMessage msg = new SysexMessage();
+        msg.setMessage(data, length);
+
+        long start = Math.max(System.nanoTime(), wireFreeAt);
+        if (scheduler != null) {
+            scheduler.schedule(msg, start, this);
+        } else {
+            // wait for the previous chunk to be on the wire before handing over the next one
+            waitUntil(start);
+            receiver.send(msg, -1);
+        }
+        wireFreeAt = start + length * 1_000_000_000L / bytesPerSecond;
+    }
+
+    private static void waitUntil(long deadline) throws InterruptedException {
+        MidiOutputScheduler.parkUntil(deadline);
+    }
+}
@@ -0,0 +1,224 @@
+package com.harmonia.midi;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide transfer counters: bytes in/out, dump and upload latencies,
+ * incomplete and timed-out dumps, ACK/NAK and input queue depth.
+ *
+ * Recording is a few LongAdder/atomic updates, cheap enough for the MIDI
+ * driver thread. The instance is registered as a JMX MBean on first use.
+ */
+public final class TransferMetrics implements TransferMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.harmonia:type=TransferMetrics";
+
+    private static final TransferMetrics INSTANCE = new TransferMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (Exception | LinkageError e) {
+            // JMX not available (restricted runtime) : counters still work
+        }
+    }
+
+    public static TransferMetrics get() {
+        return INSTANCE;
+    }
+
+    /** Bytes per second over the last second or more of samples. */
+    private static final class Throughput {
+        private long lastNanos = System.nanoTime();
+        private long lastTotal;
+        private double rate;
+
+        synchronized double perSecond(long total) {
+            long now = System.nanoTime();
+            long elapsed = now - lastNanos;
+            if (elapsed >= 1_000_000_000L) {
+                rate = (total - lastTotal) * 1e9 / elapsed;
+                lastNanos = now;
+                lastTotal = total;
+            }
+            return rate;
+        }
+
+        synchronized void reset() {
+            lastNanos = System.nanoTime();
+            lastTotal = 0;
+            rate = 0;
+        }
+    }
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder inputDropped = new LongAdder();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger queueHighWater = new AtomicInteger();
+
+    private final LongAdder dumpsCompleted = new LongAdder();
+    private final LongAdder dumpsIncomplete = new LongAdder();
+    private final LongAdder dumpsTimedOut = new LongAdder();
+    private final LatencyHistogram dumpLatency = new LatencyHistogram();
+    private volatile double lastDumpRate;
+
+    private final LongAdder uploadsCompleted = new LongAdder();
+    private final LongAdder uploadsFailed = new LongAdder();
+    private final LatencyHistogram uploadLatency = new LatencyHistogram();
+    private volatile double lastUploadRate;
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    private final LongAdder acks = new LongAdder();
+    private final LongAdder naks = new LongAdder();
+    private final LongAdder ackTimeouts = new LongAdder();
+    private final LongAdder portsOpened = new LongAdder();
+    private final LongAdder portErrors = new LongAdder();
+
+    private final Throughput inRate = new Throughput();
+    private final Throughput outRate = new Throughput();
+
+    private TransferMetrics() {
+    }
+
+    // ---------------------------------------------------------------- recording
+
+    public void messageIn(int length) {
+        messagesIn.increment();
+        bytesIn.add(length);
+    }
+
+    public void messageOut(int length) {
+        messagesOut.increment();
+        bytesOut.add(length);
+    }
+
+    public void inputDropped() {
+        inputDropped.increment();
+    }
+
+    public void inputQueueDepth(int depth) {
+        queueDepth.set(depth);
+        if (depth > queueHighWater.get()) queueHighWater.accumulateAndGet(depth, Math::max);
+    }
+
+    /** A dump frame arrived {@code nanos} after it was expected. */
+    public void dumpCompleted(long nanos, int bytes) {
+        dumpsCompleted.increment();
+        dumpLatency.record(nanos);
+        if (nanos > 0) lastDumpRate = bytes * 1e9 / nanos;
+    }
+
+    /** Truncated or oversized frame. */
+    public void dumpIncomplete() {
+        dumpsIncomplete.increment();
+    }
+
+    public void dumpTimedOut() {
+        dumpsTimedOut.increment();
+    }
+
+    /**
+     * A dump was accepted by the device; {@code nanos} is its wire time only,
+     * from the first byte handed over to the last one out (no ACK wait).
+     */
+    public void uploadCompleted(long nanos, int bytes) {
+        uploadsCompleted.increment();
+        uploadLatency.record(nanos);
+        if (nanos > 0) lastUploadRate = bytes * 1e9 / nanos;
+    }
+
+    public void uploadFailed() {
+        uploadsFailed.increment();
+    }
+
+    /** ACK or NAK received {@code nanos} after the last byte of the dump went out. */
+    public void ack(boolean accepted, long nanos) {
+        (accepted ? acks : naks).increment();
+        ackLatency.record(nanos);
+    }
+
+    public void ackTimeout() {
+        ackTimeouts.increment();
+    }
+
+    public void portOpened() {
+        portsOpened.increment();
+    }
+
+    public void portError() {
+        portErrors.increment();
+    }
+
+    public LatencyHistogram getDumpLatency() {
+        return dumpLatency;
+    }
+
+    public LatencyHistogram getUploadLatency() {
+        return uploadLatency;
+    }
+
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    // ---------------------------------------------------------------- MBean
+
+    @Override public long getBytesIn() { return bytesIn.sum(); }
+    @Override public long getBytesOut() { return bytesOut.sum(); }
+    @Override public long getMessagesIn() { return messagesIn.sum(); }
+    @Override public long getMessagesOut() { return messagesOut.sum(); }
+    @Override public double getBytesInPerSecond() { return inRate.perSecond(bytesIn.sum()); }
+    @Override public double getBytesOutPerSecond() { return outRate.perSecond(bytesOut.sum()); }
+
+    @Override public long getInputDropped() { return inputDropped.sum(); }
+    @Override public int getInputQueueDepth() { return queueDepth.get(); }
+    @Override public int getInputQueueHighWater() { return queueHighWater.get(); }
+
+    @Override public long getDumpsCompleted() { return dumpsCompleted.sum(); }
+    @Override public long getDumpsIncomplete() { return dumpsIncomplete.sum(); }
+    @Override public long getDumpsTimedOut() { return dumpsTimedOut.sum(); }
+    @Override public double getDumpLatencyP50Millis() { return dumpLatency.getPercentileMillis(50); }
+    @Override public double getDumpLatencyP95Millis() { return dumpLatency.getPercentileMillis(95); }
+    @Override public double getDumpLatencyP99Millis() { return dumpLatency.getPercentileMillis(99); }
+    @Override public double getDumpLatencyMaxMillis() { return dumpLatency.getMaxMillis(); }
+    @Override public double getLastDumpBytesPerSecond() { return lastDumpRate; }
+
+    @Override public long getUploadsCompleted() { return uploadsCompleted.sum(); }
+    @Override public long getUploadsFailed() { return uploadsFailed.sum(); }
+    @Override public double getUploadLatencyP50Millis() { return uploadLatency.getPercentileMillis(50); }
+    @Override public double getUploadLatencyP95Millis() { return uploadLatency.getPercentileMillis(95); }
+    @Override public double getUploadLatencyMaxMillis() { return uploadLatency.getMaxMillis(); }
+    @Override public double getLastUploadBytesPerSecond() { return lastUploadRate; }
+
+    @Override public long getAcks() { return acks.sum(); }
+    @Override public long getNaks() { return naks.sum(); }
+    @Override public long getAckTimeouts() { return ackTimeouts.sum(); }
+    @Override public double getAckLatencyP50Millis() { return ackLatency.getPercentileMillis(50); }
+    @Override public double getAckLatencyMaxMillis() { return ackLatency.getMaxMillis(); }
+
+    @Override public long getPortsOpened() { return portsOpened.sum(); }
+    @Override public long getPortErrors() { return portErrors.sum(); }
+
+    @Override
+    public void reset() {
+        for (LongAdder a : new LongAdder[] { bytesIn, bytesOut, messagesIn, messagesOut, inputDropped,
+                dumpsCompleted, dumpsIncomplete, dumpsTimedOut, uploadsCompleted, uploadsFailed,
+                acks, naks, ackTimeouts, portsOpened, portErrors }) {
+            a.reset();
+        }
+        queueHighWater.set(queueDepth.get());
+        dumpLatency.reset();
+        uploadLatency.reset();
+        ackLatency.reset();
+        lastDumpRate = 0;
+        lastUploadRate = 0;
+        inRate.reset();
+        outRate.reset();
+    }
+}
@@ -0,0 +1,43 @@
+package com.harmonia.midi;
+
+/** JMX view of {@link TransferMetrics} (com.harmonia:type=TransferMetrics). */
+public interface TransferMetricsMBean {
+
+    long getBytesIn();
+    long getBytesOut();
+    long getMessagesIn();
+    long getMessagesOut();
+    double getBytesInPerSecond();
+    double getBytesOutPerSecond();
+
+    long getInputDropped();
+    int getInputQueueDepth();
+    int getInputQueueHighWater();
+
+    long getDumpsCompleted();
+    long getDumpsIncomplete();
+    long getDumpsTimedOut();
+    double getDumpLatencyP50Millis();
+    double getDumpLatencyP95Millis();
+    double getDumpLatencyP99Millis();
+    double getDumpLatencyMaxMillis();
+    double getLastDumpBytesPerSecond();
+
+    long getUploadsCompleted();
+    long getUploadsFailed();
+    double getUploadLatencyP50Millis();
+    double getUploadLatencyP95Millis();
+    double getUploadLatencyMaxMillis();
+    double getLastUploadBytesPerSecond();
+
+    long getAcks();
+    long getNaks();
+    long getAckTimeouts();
+    double getAckLatencyP50Millis();
+    double getAckLatencyMaxMillis();
+
+    long getPortsOpened();
+    long getPortErrors();
+
+    void reset();
+}
@@ -0,0 +1,191 @@
+package com.harmonia.wavestation;
+
+import com.harmonia.wavestation.library.PatchLibrary;
+
+import javax.sound.midi.MidiDevice;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Backs up several Wavestation SR units at once.
+ *
+ * Each unit has its own MIDI IN/OUT pair and {@link WavestationSession}
+ * (ports, receiver, collector, output thread), and is driven by its own worker: banks of all
+ * units are dumped concurrently and stored in the {@link PatchLibrary}.
+ * A full rig backup takes about as long as the slowest unit.
+ */
+public class BackupOrchestrator {
+
+    /** One synth: its ports and global channel. */
+    public static final class Unit {
+        private final String name;
+        private final MidiDevice.Info input;
+        private final MidiDevice.Info output;
+        private final int deviceId;
+
+        public Unit(String name, MidiDevice.Info input, MidiDevice.Info output, int deviceId) {
+            this.name = name;
+            this.input = input;
+            this.output = output;
+            this.deviceId = deviceId;
+        }
+
+        public String getName() { return name; }
+        public MidiDevice.Info getInput() { return input; }
+        public MidiDevice.Info getOutput() { return output; }
+        public int getDeviceId() { return deviceId; }
+    }
+
+    public interface ProgressListener {
+        /** Called from the unit's worker thread after each bank. */
+        void onBankDone(Unit unit, int bankId, int banksDone, int banksTotal, Exception error);
+    }
+
+    /** Outcome of one unit. */
+    public static final class UnitResult {
+        private final Unit unit;
+        private int banksSaved;
+        private long bytes;
+        private long millis;
+        private final List<String> errors = new ArrayList<>();
+
+        UnitResult(Unit unit) {
+            this.unit = unit;
+        }
+
+        public Unit getUnit() { return unit; }
+        public int getBanksSaved() { return banksSaved; }
+        public long getBytes() { return bytes; }
+        public long getMillis() { return millis; }
+        public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+        public double getBytesPerSecond() {
+            return millis == 0 ? 0 : bytes * 1000.0 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s : %d banque(s), %d octets en %d ms (%.0f o/s)%s",
+                    unit.name, banksSaved, bytes, millis, getBytesPerSecond(),
+                    errors.isEmpty() ? "" : ", erreurs " + errors);
+        }
+    }
+
+    /** Outcome of the whole backup. */
+    public static final class Report {
+        private final List<UnitResult> units;
+        private final long millis;
+
+        Report(List<UnitResult> units, long millis) {
+            this.units = Collections.unmodifiableList(units);
+            this.millis = millis;
+        }
+
+        public List<UnitResult> getUnits() { return units; }
+        public long getMillis() { return millis; }
+
+        public long getBytes() {
+            long total = 0;
+            for (UnitResult u : units) total += u.bytes;
+            return total;
+        }
+
+        public boolean isSuccess() {
+            for (UnitResult u : units) {
+                if (!u.errors.isEmpty()) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (UnitResult u : units) sb.append(u).append('\n');
+            sb.append(String.format("Total : %d octets en %d ms (%.0f o/s)",
+                    getBytes(), millis, millis == 0 ? 0 : getBytes() * 1000.0 / millis));
+            return sb.toString();
+        }
+    }
+
+    private final PatchLibrary library;
+    private ProgressListener listener = (unit, bank, done, total, error) -> { };
+
+    public BackupOrchestrator(PatchLibrary library) {
+        this.library = library;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /** Dumps {@code bankIds} from every unit, one worker per unit; blocks until all are done. */
+    public Report backup(List<Unit> units, int[] bankIds) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, units.size()), r -> {
+            Thread t = new Thread(r, "backup-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<UnitResult>> futures = new ArrayList<>();
+            for (Unit u : units) {
+                futures.add(workers.submit(() -> backupUnit(u, bankIds)));
+            }
+            List<UnitResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    UnitResult failed = new UnitResult(units.get(i));
+                    failed.errors.add(String.valueOf(e.getCause()));
+                    results.add(failed);
+                }
+            }
+            return new Report(results, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private UnitResult backupUnit(Unit unit, int[] bankIds) {
+        UnitResult result = new UnitResult(unit);
+        long start = System.nanoTime();
+        try (WavestationSession session = WavestationSession.open(unit.input, unit.output, unit.deviceId,
+                null, unit.name)) {
+            WavestationClient client = session.getClient();
+
+            for (int i = 0; i < bankIds.length; i++) {
+                int bankId = bankIds[i];
+                Exception error = null;
+                try {
+                    ByteBuffer dump = client.dumpBank(bankId).get();
+                    byte[] bytes = new byte[dump.remaining()];
+                    dump.get(bytes);
+                    library.add(unit.name + "-bank" + bankId, bytes);
+                    result.banksSaved++;
+                    result.bytes += bytes.length;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.errors.add("banque " + bankId + " : interrompu");
+                    break;
+                } catch (Exception e) {
+                    error = e instanceof ExecutionException && e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e;
+                    result.errors.add("banque " + bankId + " : " + error);
+                }
+                listener.onBankDone(unit, bankId, i + 1, bankIds.length, error);
+            }
+        } catch (Exception e) {
+            result.errors.add(String.valueOf(e));
+        } finally {
+            result.millis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package com.harmonia.wavestation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental bank upload.
+ *
+ * Keeps a shadow copy of the last bank known to be in the Wavestation (per
+ * bank number). {@link #sync} compares the edited bank with it program by
+ * program and only sends single program dumps for the programs that differ;
+ * without a shadow the whole bank is sent once.
+ */
+public class BankSynchronizer {
+
+    private final WavestationSR ws;
+    private final Map<Integer, WavestationBank> shadows = new HashMap<>();
+
+    public static final class Report {
+        private final boolean fullBank;
+        private final List<Integer> sentPrograms;
+        private final int bytesSent;
+
+        Report(boolean fullBank, List<Integer> sentPrograms, int bytesSent) {
+            this.fullBank = fullBank;
+            this.sentPrograms = Collections.unmodifiableList(sentPrograms);
+            this.bytesSent = bytesSent;
+        }
+
+        public boolean isFullBank() { return fullBank; }
+        public List<Integer> getSentPrograms() { return sentPrograms; }
+        public int getBytesSent() { return bytesSent; }
+
+        @Override
+        public String toString() {
+            if (fullBank) return "banque complete (" + bytesSent + " octets)";
+            return sentPrograms.size() + " programme(s) " + sentPrograms + " (" + bytesSent + " octets)";
+        }
+    }
+
+    public BankSynchronizer(WavestationSR ws) {
+        this.ws = ws;
+    }
+
+    /** Records {@code bankDump} as the current content of the device (after a dump or a full send). */
+    public synchronized void remember(byte[] bankDump) {
+        WavestationBank bank = WavestationBank.copyOf(bankDump);
+        shadows.put(bank.getBankNumber(), bank);
+    }
+
+    public synchronized void forget(int bankNumber) {
+        shadows.remove(bankNumber);
+    }
+
+    public synchronized void forgetAll() {
+        shadows.clear();
+    }
+
+    /** Programs of {@code edited} that differ from the shadow, or null if there is no shadow. */
+    public synchronized List<Integer> diff(WavestationBank edited) {
+        WavestationBank shadow = shadows.get(edited.getBankNumber());
+        if (shadow == null) return null;
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < edited.size(); i++) {
+            // cheap test on the packed bytes first, decode only if they differ
+            if (packedRangeEquals(edited, shadow, i)) continue;
+            if (!edited.getProgram(i).sameDataAs(shadow.getProgram(i))) {
+                changed.add(i);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Sends what is needed for the device to hold {@code edited}. Blocking, to be
+     * run on the MIDI output thread; the lock is not held while sending.
+     */
+    public Report sync(WavestationBank edited) throws Exception {
+        List<Integer> changed = diff(edited);
+        byte[] sysex = edited.getSysex();
+        if (changed == null) {
+            ws.sendFullBank(sysex);
+            remember(sysex);
+            return new Report(true, new ArrayList<>(), sysex.length);
+        }
+
+        int bytes = 0;
+        List<Integer> sent = new ArrayList<>();
+        for (int i : changed) {
+            byte[] dump = edited.getProgram(i).toDump(ws.getDeviceId(), edited.getBankNumber(), i);
+            ws.sendFullPatch(dump);
+            synchronized (this) {
+                WavestationBank shadow = shadows.get(edited.getBankNumber());
+                if (shadow != null) shadow.setProgram(i, edited.getProgram(i));
+            }
+            bytes += dump.length;
+            sent.add(i);
+        }
+        return new Report(false, sent, bytes);
+    }
+
+    private static boolean packedRangeEquals(WavestationBank a, WavestationBank b, int program) {
+        int off = DumpType.BANK.getHeaderLength();
+        int first = program * WavestationSysex.PROGRAM_SIZE;
+        int last = first + WavestationSysex.PROGRAM_SIZE - 1;
+        int from = off + (first / 7) * 8;
+        int to = off + (last / 7) * 8 + 8;
+        byte[] x = a.getSysex();
+        byte[] y = b.getSysex();
+        for (int k = from; k < to && k < x.length; k++) {
+            if (x[k] != y[k]) return false;
+        }
+        return true;
+    }
+}
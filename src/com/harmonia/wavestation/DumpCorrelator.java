@@ -0,0 +1,255 @@
+package com.harmonia.wavestation;
+
+import com.harmonia.midi.MidiCommandQueue;
+import com.harmonia.midi.SysexAssembler;
+import com.harmonia.midi.TransferMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Matches incoming dumps with the requests waiting for them.
+ *
+ * Each request registers what it waits for (dump type, channel, bank and
+ * program, -1 meaning any) and gets its own future; incoming SysEx is
+ * reassembled into complete messages and handed to the oldest pending
+ * request it matches. Several requests can thus be in flight at once and
+ * the device answers them back to back at wire speed.
+ *
+ * The number of outstanding requests is bounded so the synth's input buffer
+ * is never flooded: requests beyond the window wait here, not on the output
+ * thread, and the next one is queued for sending when a reply, a timeout or a
+ * cancellation frees a slot. Each timeout takes the replies still due before
+ * it into account.
+ */
+public class DumpCorrelator {
+
+    public static final int DEFAULT_WINDOW = 8;
+
+    /** Sends one request; run on the MIDI output thread. */
+    public interface Request {
+        void send() throws Exception;
+    }
+
+    // request not sent yet, waiting for a window slot
+    private static final class Waiting {
+        final DumpType type;
+        final int deviceId;
+        final int bank;
+        final int program;
+        final Request request;
+        final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+
+        Waiting(DumpType type, int deviceId, int bank, int program, Request request) {
+            this.type = type;
+            this.deviceId = deviceId;
+            this.bank = bank;
+            this.program = program;
+            this.request = request;
+        }
+    }
+
+    private static final class Pending {
+        final DumpType type;
+        final int channel;
+        final int bank;
+        final int program;
+        final long since = System.nanoTime();
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+        Pending(DumpType type, int channel, int bank, int program) {
+            this.type = type;
+            this.channel = channel;
+            this.bank = bank;
+            this.program = program;
+        }
+
+        boolean matches(byte[] frame, DumpType frameType) {
+            return frameType == type
+                && (frame[2] & 0xFF) == channel
+                && (bank < 0 || WavestationSysex.bankOf(frame) == bank)
+                && (program < 0 || WavestationSysex.programOf(frame) == program);
+        }
+    }
+
+    private final SysexAssembler assembler = new SysexAssembler();
+    private final List<Pending> pending = new ArrayList<>();   // oldest first
+    private final ArrayDeque<Waiting> waiting = new ArrayDeque<>();
+    private final MidiCommandQueue queue;
+    private final int window;
+    private int inFlight;
+    private long replyHorizon = System.nanoTime();              // when the replies due so far should be in
+
+    /** Requests are sent on {@code queue}. */
+    public DumpCorrelator(MidiCommandQueue queue) {
+        this(queue, DEFAULT_WINDOW);
+    }
+
+    public DumpCorrelator(MidiCommandQueue queue, int window) {
+        this.queue = queue;
+        this.window = window;
+    }
+
+    /**
+     * Sends {@code request} on the output thread as soon as the window allows
+     * it. The future completes with a read-only view of the matching frame, an
+     * IOException if that frame is corrupt, or a TimeoutException; cancelling
+     * it before the request is sent drops the request.
+     *
+     * @param bank    bank expected in the reply header, -1 for any
+     * @param program program expected in the reply header, -1 for any
+     */
+    public CompletableFuture<ByteBuffer> request(DumpType type, int deviceId, int bank, int program,
+                                                 Request request) {
+        Waiting w = new Waiting(type, deviceId, bank, program, request);
+        synchronized (this) {
+            waiting.add(w);
+        }
+        w.result.whenComplete((data, ex) -> {
+            synchronized (this) {
+                waiting.remove(w);
+            }
+        });
+        pump();
+        return w.result;
+    }
+
+    // queues waiting requests for sending while the window has room
+    private void pump() {
+        List<Waiting> ready = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < window && !waiting.isEmpty()) {
+                Waiting w = waiting.poll();
+                if (w.result.isDone()) continue;
+                inFlight++;
+                ready.add(w);
+            }
+        }
+        for (Waiting w : ready) send(w);
+    }
+
+    private void send(Waiting w) {
+        queue.submit(() -> {
+            if (w.result.isDone()) return null;   // cancelled while queued
+            CompletableFuture<ByteBuffer> frame = expect(w.type, w.deviceId, w.bank, w.program);
+            frame.whenComplete((data, ex) -> {
+                if (ex != null) w.result.completeExceptionally(ex);
+                else w.result.complete(data);
+            });
+            w.result.whenComplete((data, ex) -> frame.cancel(false));
+            try {
+                w.request.send();
+            } catch (Exception e) {
+                frame.completeExceptionally(e);
+            }
+            return frame;
+        }).whenComplete((frame, ex) -> {
+            if (ex != null) w.result.completeExceptionally(ex);
+            if (frame == null) release();   // never registered: its slot is free again
+        });
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        pump();
+    }
+
+    // registers a request about to be sent; its slot is released when the future completes
+    private synchronized CompletableFuture<ByteBuffer> expect(DumpType type, int deviceId, int bank, int program) {
+        Pending p = new Pending(type, WavestationSysex.channelByte(deviceId), bank, program);
+        pending.add(p);
+
+        // replies come one after the other: this one is due after those already expected
+        long now = System.nanoTime();
+        replyHorizon = Math.max(now, replyHorizon)
+                + TimeUnit.MILLISECONDS.toNanos(WavestationSysex.wireTimeMillis(type.getFrameLength()));
+        long timeout = TimeUnit.NANOSECONDS.toMillis(replyHorizon - now) + type.getTimeoutMillis();
+
+        p.future.whenComplete((data, ex) -> {
+            if (ex instanceof TimeoutException) TransferMetrics.get().dumpTimedOut();
+            remove(p);
+            release();
+        });
+        p.future.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        return p.future;
+    }
+
+    /** Requests sent and waiting for their reply. */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Requests not sent yet because the window is full. */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /** Fails every pending and waiting request (port closed). */
+    public void cancelAll() {
+        List<Pending> all;
+        List<Waiting> notSent;
+        synchronized (this) {
+            all = new ArrayList<>(pending);
+            notSent = new ArrayList<>(waiting);
+            pending.clear();
+            waiting.clear();
+            assembler.reset();
+        }
+        for (Waiting w : notSent) w.result.cancel(false);
+        for (Pending p : all) p.future.cancel(false);
+    }
+
+    /** Raw SysEx chunk, status byte included (F0 new message, F7 continuation). */
+    public void onSysexReceived(byte[] sysex) {
+        Pending match;
+        byte[] frame;
+        DumpType type;
+        synchronized (this) {
+            if ((sysex[0] & 0xFF) == 0xF0) assembler.reset();
+            if (!assembler.append(sysex)) return;
+            if (!assembler.isComplete()) {
+                // not a frame anyone can expect: drop it instead of growing
+                if (assembler.size() > DumpType.BANK.getFrameLength()) assembler.reset();
+                return;
+            }
+            frame = assembler.toByteArray();
+            assembler.reset();
+
+            type = WavestationSysex.dumpType(frame);
+            if (type == null) return;   // ACK/NAK and other traffic
+            match = null;
+            for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                if (p.matches(frame, type)) {
+                    it.remove();
+                    match = p;
+                    break;
+                }
+            }
+        }
+        if (match == null) return;
+
+        // complete outside the lock: callbacks may send the next request
+        if (WavestationSysex.isValidDump(frame)) {
+            TransferMetrics.get().dumpCompleted(System.nanoTime() - match.since, frame.length);
+            match.future.complete(ByteBuffer.wrap(frame).asReadOnlyBuffer());
+        } else {
+            TransferMetrics.get().dumpIncomplete();
+            match.future.completeExceptionally(new IOException("Dump " + type + " invalide : "
+                    + frame.length + " octets au lieu de " + type.getFrameLength() + " ou checksum faux"));
+        }
+    }
+
+    private synchronized void remove(Pending p) {
+        pending.remove(p);
+    }
+}
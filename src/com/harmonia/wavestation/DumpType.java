@@ -0,0 +1,61 @@
+package com.harmonia.wavestation;
+
+/**
+ * Dump frames sent by the Wavestation SR:
+ * F0 42 3n 28 [function] [params...] [packed data] [checksum] F7
+ *
+ * Data is Korg 7-bit packed (one MSB byte followed by up to 7 data bytes).
+ */
+public enum DumpType {
+    PROGRAM(0x40, 2, WavestationSysex.PROGRAM_SIZE),                                    // params: bank, program
+    BANK(0x4C, 1, WavestationSysex.PROGRAM_SIZE * WavestationSysex.PROGRAMS_PER_BANK),  // params: bank
+    GLOBAL(0x51, 0, WavestationSysex.GLOBAL_SIZE);
+
+    private final int function;
+    private final int paramCount;
+    private final int dataSize;
+
+    DumpType(int function, int paramCount, int dataSize) {
+        this.function = function;
+        this.paramCount = paramCount;
+        this.dataSize = dataSize;
+    }
+
+    public int getFunction() {
+        return function;
+    }
+
+    public int getParamCount() {
+        return paramCount;
+    }
+
+    /** Unpacked (8-bit) size of the data carried by the frame. */
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    /** F0 42 3n 28 function + params */
+    public int getHeaderLength() {
+        return 5 + paramCount;
+    }
+
+    /** Total length of the frame on the wire, F0 and F7 included. */
+    public int getFrameLength() {
+        return getHeaderLength() + WavestationSysex.packedLength(dataSize) + 2;
+    }
+
+    /**
+     * Generous timeout for a dump of this type: twice the wire time at
+     * 31250 baud plus a fixed margin for the synth to start answering.
+     */
+    public long getTimeoutMillis() {
+        return 2 * WavestationSysex.wireTimeMillis(getFrameLength()) + 2000;
+    }
+
+    public static DumpType fromFunction(int function) {
+        for (DumpType t : values()) {
+            if (t.function == function) return t;
+        }
+        return null;
+    }
+}
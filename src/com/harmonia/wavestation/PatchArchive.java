@@ -0,0 +1,378 @@
+package com.harmonia.wavestation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed container for many dumps (.wsa).
+ *
+ * <pre>
+ * "HWSA" version
+ * block*   : 'B', int rawLength, int deflatedLength, deflated records
+ * index    : 'I', int blockCount, { long offset }*, int entryCount,
+ *            { UTF name, int block, int offsetInBlock, int length }*
+ * footer   : long indexOffset, "HWSX"
+ * record   : byte kind, then
+ *            RAW  : int length, sysex
+ *            DUMP : byte headerLength, header, unpacked data (size from the dump type)
+ * </pre>
+ *
+ * Valid Wavestation dumps are stored unpacked (8-bit) and rebuilt
+ * byte for byte on read; anything else is stored as is. Records are grouped
+ * into ~64 KB blocks compressed independently, so one dump is read by
+ * inflating one block. Writing and sequential reading are streamed.
+ */
+public final class PatchArchive {
+
+    public static final byte[] MAGIC = { 'H', 'W', 'S', 'A' };
+    private static final byte[] FOOTER_MAGIC = { 'H', 'W', 'S', 'X' };
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int FOOTER_LENGTH = 12;
+    private static final int BLOCK_HEADER_LENGTH = 9;
+    /** Largest dump accepted; bounds every length read back from a file. */
+    public static final int MAX_DUMP_LENGTH = 8 * 1024 * 1024;
+    // a block is flushed once it reaches BLOCK_SIZE: at most one record beyond it
+    private static final int MAX_BLOCK_LENGTH = BLOCK_SIZE + 5 + MAX_DUMP_LENGTH;
+    private static final int MIN_ENTRY_LENGTH = 2 + 3 * 4;
+
+    private static final int TAG_BLOCK = 'B';
+    private static final int TAG_INDEX = 'I';
+
+    private static final int KIND_RAW = 0;
+    private static final int KIND_DUMP = 1;
+
+    private PatchArchive() { }
+
+    /** One dump of the archive. */
+    public static final class Entry {
+        private final String name;
+        private final int block;
+        private final int offset;
+        private final int length;
+
+        Entry(String name, int block, int offset, int length) {
+            this.name = name;
+            this.block = block;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getName() { return name; }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public interface DumpConsumer {
+        void accept(String name, byte[] sysex) throws IOException;
+    }
+
+    public static boolean isArchive(byte[] head) {
+        return head.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(head, MAGIC.length), MAGIC);
+    }
+
+    public static boolean isArchive(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return isArchive(in.readNBytes(MAGIC.length));
+        }
+    }
+
+    // ---------------------------------------------------------------- writing
+
+    /** Streaming writer: blocks are compressed and written as they fill up. */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + 32 * 1024);
+        private final DataOutputStream blockOut = new DataOutputStream(block);
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final byte[] deflateBuffer = new byte[BLOCK_SIZE];
+        private final List<Long> blockOffsets = new ArrayList<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private long position;
+        private boolean closed;
+
+        public Writer(OutputStream stream) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(stream, BLOCK_SIZE));
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            position = MAGIC.length + 1;
+        }
+
+        public void add(String name, byte[] sysex) throws IOException {
+            if (sysex.length > MAX_DUMP_LENGTH) throw new IOException("Dump trop long pour une archive : " + name);
+            int offset = block.size();
+            DumpType type = WavestationSysex.dumpType(sysex);
+            if (type != null && WavestationSysex.isValidDump(sysex) && rebuildsExactly(sysex, type)) {
+                int headerLength = type.getHeaderLength();
+                blockOut.writeByte(KIND_DUMP);
+                blockOut.writeByte(headerLength);
+                blockOut.write(sysex, 0, headerLength);
+                blockOut.write(WavestationSysex.unpackData(sysex, type));
+            } else {
+                blockOut.writeByte(KIND_RAW);
+                blockOut.writeInt(sysex.length);
+                blockOut.write(sysex);
+            }
+            entries.add(new Entry(name, blockOffsets.size(), offset, block.size() - offset));
+            if (block.size() >= BLOCK_SIZE) flushBlock();
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) return;
+            byte[] raw = block.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 2);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflateBuffer);
+                deflated.write(deflateBuffer, 0, n);
+            }
+            blockOffsets.add(position);
+            out.writeByte(TAG_BLOCK);
+            out.writeInt(raw.length);
+            out.writeInt(deflated.size());
+            deflated.writeTo(out);
+            position += BLOCK_HEADER_LENGTH + deflated.size();
+            block.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushBlock();
+                long indexOffset = position;
+                out.writeByte(TAG_INDEX);
+                out.writeInt(blockOffsets.size());
+                for (long offset : blockOffsets) out.writeLong(offset);
+                out.writeInt(entries.size());
+                for (Entry e : entries) {
+                    out.writeUTF(e.name);
+                    out.writeInt(e.block);
+                    out.writeInt(e.offset);
+                    out.writeInt(e.length);
+                }
+                out.writeLong(indexOffset);
+                out.write(FOOTER_MAGIC);
+                out.flush();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+    }
+
+    public static Writer create(Path file) throws IOException {
+        return new Writer(new FileOutputStream(file.toFile()));
+    }
+
+    // ---------------------------------------------------------------- sequential read
+
+    /**
+     * Reads every dump in order, one block in memory at a time. The index
+     * (at the end) is not read, so dumps are named by position ("#0", "#1"...).
+     */
+    public static void stream(InputStream stream, DumpConsumer consumer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BLOCK_SIZE));
+        byte[] magic = in.readNBytes(MAGIC.length);
+        if (!isArchive(magic)) throw new IOException("Pas une archive Harmonia");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Version d'archive inconnue : " + version);
+
+        Inflater inflater = new Inflater();
+        int index = 0;
+        try {
+            while (true) {
+                int tag = in.readUnsignedByte();
+                if (tag == TAG_INDEX) return;
+                if (tag != TAG_BLOCK) throw new IOException("Archive corrompue");
+                int rawLength = checkLength(in.readInt(), MAX_BLOCK_LENGTH);
+                int deflatedLength = checkLength(in.readInt(), maxDeflatedLength(rawLength));
+                byte[] raw = inflate(inflater, in.readNBytes(deflatedLength), rawLength);
+                DataInputStream records = new DataInputStream(new ByteArrayInputStream(raw));
+                while (records.available() > 0) {
+                    consumer.accept("#" + index++, readRecord(records));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Archive tronquee", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ---------------------------------------------------------------- random access
+
+    /** Random-access reader over the index; blocks are inflated on demand. */
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final long[] blockOffsets;
+        private final List<Entry> entries;
+        private final Inflater inflater = new Inflater();
+        private int cachedBlock = -1;
+        private byte[] cachedRaw;
+
+        Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < MAGIC.length + 1 + 1 + 8 + FOOTER_LENGTH) throw new IOException("Archive corrompue");
+                ByteBuffer footer = read(size - FOOTER_LENGTH, FOOTER_LENGTH);
+                long indexOffset = footer.getLong();
+                byte[] magic = new byte[4];
+                footer.get(magic);
+                if (!Arrays.equals(magic, FOOTER_MAGIC) || indexOffset < MAGIC.length + 1
+                        || indexOffset > size - FOOTER_LENGTH) {
+                    throw new IOException("Index d'archive absent ou corrompu");
+                }
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(channel.position(indexOffset))));
+                if (in.readUnsignedByte() != TAG_INDEX) throw new IOException("Index d'archive corrompu");
+                long indexLength = size - FOOTER_LENGTH - indexOffset;
+                blockOffsets = new long[checkLength(in.readInt(), (int) Math.min(indexLength / 8, Integer.MAX_VALUE))];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    long offset = in.readLong();
+                    if (offset < MAGIC.length + 1 || offset > indexOffset - BLOCK_HEADER_LENGTH) {
+                        throw new IOException("Archive corrompue");
+                    }
+                    blockOffsets[i] = offset;
+                }
+                int count = checkLength(in.readInt(), (int) Math.min(indexLength / MIN_ENTRY_LENGTH, Integer.MAX_VALUE));
+                List<Entry> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Entry e = new Entry(in.readUTF(), in.readInt(), in.readInt(), in.readInt());
+                    if (e.block < 0 || e.block >= blockOffsets.length || e.offset < 0 || e.length <= 0
+                            || e.offset > MAX_BLOCK_LENGTH - e.length) {
+                        throw new IOException("Archive corrompue");
+                    }
+                    list.add(e);
+                }
+                entries = Collections.unmodifiableList(list);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public List<Entry> entries() {
+            return entries;
+        }
+
+        public synchronized byte[] read(Entry entry) throws IOException {
+            byte[] raw = block(entry.block);
+            if (entry.offset + entry.length > raw.length) throw new IOException("Archive corrompue");
+            return readRecord(new DataInputStream(new ByteArrayInputStream(raw, entry.offset, entry.length)));
+        }
+
+        private byte[] block(int index) throws IOException {
+            if (index == cachedBlock) return cachedRaw;
+            long offset = blockOffsets[index];
+            ByteBuffer head = read(offset, BLOCK_HEADER_LENGTH);
+            if (head.get() != TAG_BLOCK) throw new IOException("Bloc d'archive corrompu");
+            int rawLength = checkLength(head.getInt(), MAX_BLOCK_LENGTH);
+            int deflatedLength = checkLength(head.getInt(), maxDeflatedLength(rawLength));
+            if (deflatedLength > channel.size() - offset - BLOCK_HEADER_LENGTH) throw new IOException("Archive corrompue");
+            ByteBuffer body = read(offset + BLOCK_HEADER_LENGTH, deflatedLength);
+            cachedRaw = inflate(inflater, body.array(), rawLength);
+            cachedBlock = index;
+            return cachedRaw;
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, position + buf.position()) < 0) throw new EOFException("Archive tronquee");
+            }
+            buf.flip();
+            return buf;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            channel.close();
+        }
+    }
+
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    // ---------------------------------------------------------------- records
+
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        if (kind == KIND_RAW) {
+            byte[] sysex = new byte[checkLength(in.readInt(), Math.min(MAX_DUMP_LENGTH, in.available()))];
+            in.readFully(sysex);
+            return sysex;
+        }
+        if (kind != KIND_DUMP) throw new IOException("Enregistrement inconnu : " + kind);
+
+        int headerLength = in.readUnsignedByte();
+        byte[] header = new byte[headerLength];
+        in.readFully(header);
+        DumpType type = WavestationSysex.dumpType(header);
+        if (type == null || type.getHeaderLength() != headerLength) throw new IOException("En-tete de dump invalide");
+        byte[] data = new byte[type.getDataSize()];
+        in.readFully(data);
+
+        return rebuild(type, header, data);
+    }
+
+    private static byte[] rebuild(DumpType type, byte[] header, byte[] data) {
+        int[] params = new int[type.getParamCount()];
+        for (int i = 0; i < params.length; i++) params[i] = header[5 + i];
+        return WavestationSysex.buildFrame(type, header[2] & 0x0F, params, data);
+    }
+
+    // unusual packing (stray MSB bits) would not survive unpack/pack: such dumps are stored raw
+    private static boolean rebuildsExactly(byte[] sysex, DumpType type) {
+        byte[] rebuilt = rebuild(type, sysex, WavestationSysex.unpackData(sysex, type));
+        return Arrays.equals(rebuilt, sysex);
+    }
+
+    private static int checkLength(int length, int max) throws IOException {
+        if (length < 0 || length > max) throw new IOException("Archive corrompue");
+        return length;
+    }
+
+    // deflate never expands by more than a few bytes per 16 KB stored block
+    private static int maxDeflatedLength(int rawLength) {
+        return rawLength + (rawLength >> 3) + 64;
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] deflated, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(deflated);
+        byte[] raw = new byte[rawLength];
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int k = inflater.inflate(raw, n, rawLength - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += k;
+            }
+            if (n != rawLength) throw new IOException("Bloc d'archive corrompu");
+        } catch (DataFormatException e) {
+            throw new IOException("Bloc d'archive corrompu", e);
+        }
+        return raw;
+    }
+}
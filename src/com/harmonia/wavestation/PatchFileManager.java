@@ -1,6 +1,13 @@
 package com.harmonia.wavestation;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
 
 public class PatchFileManager {
 
@@ -10,9 +17,71 @@ public class PatchFileManager {
         }
     }
 
+    public static void save(File file, ByteBuffer sysex) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer src = sysex.duplicate();
+            while (src.hasRemaining()) {
+                ch.write(src);
+            }
+        }
+    }
+
+    /**
+     * Raw .syx bytes. A {@link PatchArchive} is read transparently: its dumps
+     * are returned one after the other, as in a multi-message .syx file.
+     */
     public static byte[] load(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return fis.readAllBytes();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            in.mark(PatchArchive.MAGIC.length);
+            boolean archive = PatchArchive.isArchive(in.readNBytes(PatchArchive.MAGIC.length));
+            in.reset();
+            if (!archive) {
+                return in.readAllBytes();
+            }
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            PatchArchive.stream(in, (name, sysex) -> all.write(sysex));
+            return all.toByteArray();
+        }
+    }
+
+    /** F0 .. F7 messages of raw .syx bytes; bytes outside messages are skipped. */
+    public static List<byte[]> splitMessages(byte[] content) {
+        return splitMessages(content, null);
+    }
+
+    /**
+     * Same, and {@code unterminated} (if not null) gets the offset of each
+     * message cut short by another F0 or by the end of the content.
+     */
+    public static List<byte[]> splitMessages(byte[] content, IntConsumer unterminated) {
+        List<byte[]> messages = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < content.length; i++) {
+            int b = content[i] & 0xFF;
+            if (b == 0xF0) {
+                if (start >= 0 && unterminated != null) unterminated.accept(start);   // F0 inside a message
+                start = i;
+            } else if (b == 0xF7 && start >= 0) {
+                messages.add(Arrays.copyOfRange(content, start, i + 1));
+                start = -1;
+            }
+        }
+        if (start >= 0 && unterminated != null) unterminated.accept(start);
+        return messages;
+    }
+
+    /** Writes all {@code dumps} into one compressed {@link PatchArchive}. */
+    public static void saveArchive(File file, Iterable<byte[]> dumps) throws IOException {
+        try (PatchArchive.Writer writer = PatchArchive.create(file.toPath())) {
+            int i = 0;
+            for (byte[] dump : dumps) {
+                DumpType type = WavestationSysex.dumpType(dump);
+                String name = type == null ? "sysex" : type.toString().toLowerCase();
+                if (WavestationSysex.bankOf(dump) >= 0) name += "-" + WavestationSysex.bankOf(dump);
+                if (WavestationSysex.programOf(dump) >= 0) name += "-" + WavestationSysex.programOf(dump);
+                writer.add(name + "#" + i++, dump);
+            }
         }
     }
 }
@@ -0,0 +1,221 @@
+package com.harmonia.wavestation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Checks and normalizes a whole tree of .syx files in parallel.
+ *
+ * Files are streamed from the directory walk and handled by a pool of one
+ * thread per core; at most two files per thread are loaded at a time, so
+ * memory stays bounded whatever the size of the tree. Each file is split
+ * into its F0 .. F7 messages; every Wavestation dump is checked (length,
+ * checksum), its channel can be rewritten, and the valid messages can be
+ * written one per file under an output directory mirroring the input tree.
+ */
+public class SyxImportPipeline {
+
+    /** Files larger than this are reported, not loaded. */
+    public static final long MAX_FILE_SIZE = 8L << 20;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    public enum Status { VALID, BAD_CHECKSUM, BAD_LENGTH, OTHER_WAVESTATION, NOT_WAVESTATION, UNTERMINATED }
+
+    /** Counters of one run; safe to read while it is running. */
+    public static final class Report {
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong failedFiles = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong normalized = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong[] byStatus = new AtomicLong[Status.values().length];
+        private final AtomicLong[] byType = new AtomicLong[DumpType.values().length];
+        private final List<String> errors = new ArrayList<>();
+        private long millis;
+
+        Report() {
+            for (int i = 0; i < byStatus.length; i++) byStatus[i] = new AtomicLong();
+            for (int i = 0; i < byType.length; i++) byType[i] = new AtomicLong();
+        }
+
+        public long getFiles() { return files.get(); }
+        /** Files that could not be read or written. */
+        public long getFailedFiles() { return failedFiles.get(); }
+        public long getBytes() { return bytes.get(); }
+        public long getCount(Status status) { return byStatus[status.ordinal()].get(); }
+        /** Valid dumps of this type. */
+        public long getCount(DumpType type) { return byType[type.ordinal()].get(); }
+        /** Messages whose channel was rewritten. */
+        public long getNormalized() { return normalized.get(); }
+        public long getWritten() { return written.get(); }
+        public long getMillis() { return millis; }
+
+        /** First {@value #MAX_REPORTED_ERRORS} problems, one line each. */
+        public synchronized List<String> getErrors() {
+            return Collections.unmodifiableList(new ArrayList<>(errors));
+        }
+
+        public long getMessages() {
+            long n = 0;
+            for (AtomicLong c : byStatus) n += c.get();
+            return n;
+        }
+
+        synchronized void error(Path file, String message) {
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(file + " : " + message);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d fichiers (%d en erreur), %d octets, %d messages en %d ms%n",
+                    getFiles(), getFailedFiles(), getBytes(), getMessages(), millis));
+            sb.append("  valides :");
+            for (DumpType t : DumpType.values()) sb.append(' ').append(t).append('=').append(getCount(t));
+            sb.append(String.format("%n  checksum faux %d, longueur fausse %d, autres Wavestation %d, non Wavestation %d, non termines %d%n",
+                    getCount(Status.BAD_CHECKSUM), getCount(Status.BAD_LENGTH), getCount(Status.OTHER_WAVESTATION),
+                    getCount(Status.NOT_WAVESTATION), getCount(Status.UNTERMINATED)));
+            sb.append(String.format("  canal reecrit %d, fichiers ecrits %d", getNormalized(), getWritten()));
+            return sb.toString();
+        }
+    }
+
+    private int targetDeviceId = -1;
+    private Path outputDir;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Rewrites the channel of every dump to {@code deviceId}'s (-1: keep). */
+    public SyxImportPipeline setTargetDeviceId(int deviceId) {
+        this.targetDeviceId = deviceId;
+        return this;
+    }
+
+    /** Writes each valid dump to its own file under {@code dir} (null: check only). */
+    public SyxImportPipeline setOutputDir(Path dir) {
+        this.outputDir = dir;
+        return this;
+    }
+
+    public SyxImportPipeline setParallelism(int threads) {
+        this.parallelism = Math.max(1, threads);
+        return this;
+    }
+
+    /** Processes every .syx file under {@code root}; blocks until done. */
+    public Report run(Path root) throws IOException, InterruptedException {
+        Report report = new Report();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "syx-import");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        try (Stream<Path> walk = Files.walk(root)) {
+            Iterator<Path> it = walk.filter(p -> Files.isRegularFile(p)
+                                        && p.getFileName().toString().toLowerCase().endsWith(".syx"))
+                                    .iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                inFlight.acquire();   // back-pressure on the walk
+                pool.execute(() -> {
+                    try {
+                        processFile(root, file, report);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        report.millis = (System.nanoTime() - start) / 1_000_000;
+        return report;
+    }
+
+    private void processFile(Path root, Path file, Report report) {
+        report.files.incrementAndGet();
+        try {
+            if (Files.size(file) > MAX_FILE_SIZE) {
+                report.failedFiles.incrementAndGet();
+                report.error(file, "fichier trop gros");
+                return;
+            }
+            byte[] content = PatchFileManager.load(file.toFile());
+            report.bytes.addAndGet(content.length);
+
+            List<byte[]> messages = PatchFileManager.splitMessages(content, at -> unterminated(file, report));
+            int index = 0;
+            for (byte[] msg : messages) {
+                Status status = check(msg);
+                report.byStatus[status.ordinal()].incrementAndGet();
+                if (status != Status.VALID) {
+                    report.error(file, "message " + index + " : " + status);
+                    index++;
+                    continue;
+                }
+                report.byType[WavestationSysex.dumpType(msg).ordinal()].incrementAndGet();
+                if (targetDeviceId >= 0 && normalize(msg, targetDeviceId)) {
+                    report.normalized.incrementAndGet();
+                }
+                if (outputDir != null) {
+                    write(root, file, messages.size() > 1 ? index : -1, msg);
+                    report.written.incrementAndGet();
+                }
+                index++;
+            }
+        } catch (IOException | RuntimeException e) {
+            report.failedFiles.incrementAndGet();
+            report.error(file, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static void unterminated(Path file, Report report) {
+        report.byStatus[Status.UNTERMINATED.ordinal()].incrementAndGet();
+        report.error(file, "message sans F7");
+    }
+
+    static Status check(byte[] msg) {
+        if (!WavestationSysex.isWavestationFrame(msg)) return Status.NOT_WAVESTATION;
+        DumpType type = WavestationSysex.dumpType(msg);
+        if (type == null) return Status.OTHER_WAVESTATION;
+        if (msg.length != type.getFrameLength()) return Status.BAD_LENGTH;
+        return WavestationSysex.isValidDump(msg) ? Status.VALID : Status.BAD_CHECKSUM;
+    }
+
+    /**
+     * Sets the channel byte of a Wavestation frame; the checksum only covers
+     * the data. Returns false if it already had that channel.
+     */
+    public static boolean normalize(byte[] msg, int deviceId) {
+        byte channel = (byte) WavestationSysex.channelByte(deviceId);
+        if (msg[2] == channel) return false;
+        msg[2] = channel;
+        return true;
+    }
+
+    private void write(Path root, Path file, int index, byte[] msg) throws IOException {
+        Path relative = root.relativize(file);
+        String name = relative.getFileName().toString();
+        if (index >= 0) {
+            name = name.substring(0, name.length() - 4) + String.format("-%03d.syx", index);
+        }
+        Path parent = relative.getParent();
+        Path dir = parent == null ? outputDir : outputDir.resolve(parent);
+        Files.createDirectories(dir);
+        PatchFileManager.save(new File(dir.toFile(), name), msg);
+    }
+}
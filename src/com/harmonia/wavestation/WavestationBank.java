@@ -0,0 +1,109 @@
+package com.harmonia.wavestation;
+
+/**
+ * Bank dump seen as {@value WavestationSysex#PROGRAMS_PER_BANK} programs.
+ *
+ * The bank works directly on the dump frame: a program is decoded from the
+ * 7-bit packed data only when it is asked for, and an edit re-encodes only
+ * the packed group holding the modified byte and adjusts the checksum by
+ * difference. Browsing names or editing one program never repacks the bank.
+ */
+public class WavestationBank {
+
+    private final byte[] frame;
+    private final int dataOffset;
+    private final int checksumOffset;
+    private final WavestationProgram[] programs = new WavestationProgram[WavestationSysex.PROGRAMS_PER_BANK];
+
+    private WavestationBank(byte[] frame) {
+        this.frame = frame;
+        this.dataOffset = DumpType.BANK.getHeaderLength();
+        this.checksumOffset = dataOffset + WavestationSysex.packedLength(DumpType.BANK.getDataSize());
+    }
+
+    /** Wraps a bank dump without copying it; edits are written into {@code frame}. */
+    public static WavestationBank wrap(byte[] frame) {
+        if (WavestationSysex.dumpType(frame) != DumpType.BANK
+                || frame.length != DumpType.BANK.getFrameLength()) {
+            throw new IllegalArgumentException("SysEx banque Wavestation invalide");
+        }
+        return new WavestationBank(frame);
+    }
+
+    public static WavestationBank copyOf(byte[] frame) {
+        return wrap(frame.clone());
+    }
+
+    public int getBankNumber() {
+        return frame[5] & 0x7F;
+    }
+
+    public int size() {
+        return programs.length;
+    }
+
+    /** Program {@code index}, decoded on first access. */
+    public WavestationProgram getProgram(int index) {
+        WavestationProgram p = programs[index];
+        if (p == null) {
+            byte[] data = new byte[WavestationSysex.PROGRAM_SIZE];
+            int base = index * WavestationSysex.PROGRAM_SIZE;
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) readByte(base + i);
+            }
+            p = new WavestationProgram(data, this, index);
+            programs[index] = p;
+        }
+        return p;
+    }
+
+    /** Decodes only the name bytes of a program. */
+    public String getProgramName(int index) {
+        WavestationProgram p = programs[index];
+        if (p != null) return p.getName();
+        byte[] name = new byte[WavestationProgram.NAME_LENGTH];
+        int base = index * WavestationSysex.PROGRAM_SIZE + WavestationProgram.NAME_OFFSET;
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (byte) readByte(base + i);
+        }
+        return WavestationProgram.decodeName(name);
+    }
+
+    /** Replaces program {@code index} by a copy of {@code program}'s data. */
+    public void setProgram(int index, WavestationProgram program) {
+        byte[] src = program.getData();
+        WavestationProgram target = getProgram(index);
+        for (int i = 0; i < src.length; i++) {
+            target.set(i, src[i] & 0xFF);
+        }
+    }
+
+    /** The dump frame, edits included (no copy, no repack). */
+    public byte[] getSysex() {
+        return frame;
+    }
+
+    /** Unpacked byte {@code index} of the bank data. */
+    int readByte(int index) {
+        int group = dataOffset + (index / 7) * 8;
+        int bit = index % 7;
+        int msb = (frame[group] >> bit) & 1;
+        return (frame[group + 1 + bit] & 0x7F) | (msb << 7);
+    }
+
+    /** Writes unpacked byte {@code index}: one packed group and the checksum are updated. */
+    void writeByte(int index, int value) {
+        int group = dataOffset + (index / 7) * 8;
+        int bit = index % 7;
+        int oldMsb = frame[group];
+        int oldLow = frame[group + 1 + bit];
+        int newMsb = (oldMsb & ~(1 << bit)) | (((value >> 7) & 1) << bit);
+        int newLow = value & 0x7F;
+        frame[group] = (byte) newMsb;
+        frame[group + 1 + bit] = (byte) newLow;
+
+        // checksum = sum of packed bytes (7 bits): apply the difference only
+        int delta = (newMsb - oldMsb) + (newLow - oldLow);
+        frame[checksumOffset] = (byte) ((frame[checksumOffset] + delta) & 0x7F);
+    }
+}
@@ -0,0 +1,129 @@
+package com.harmonia.wavestation;
+
+import com.harmonia.midi.MidiCommandQueue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous front end of {@link WavestationSR}.
+ *
+ * Every call is queued on the single MIDI output thread and returns at once
+ * with a CompletableFuture; callers (the Swing UI) only render the result.
+ * Dump requests are pipelined: each reply is routed to its own future by the
+ * {@link DumpCorrelator}, so several requests can be outstanding at once.
+ */
+public class WavestationClient {
+
+    private final WavestationSR ws;
+    private final DumpCorrelator correlator;
+    private final MidiCommandQueue queue;
+    private final BankSynchronizer synchronizer;
+
+    /** {@code correlator} must receive the MIDI IN SysEx. */
+    public WavestationClient(WavestationSR ws, DumpCorrelator correlator, MidiCommandQueue queue) {
+        this.ws = ws;
+        this.correlator = correlator;
+        this.queue = queue;
+        this.synchronizer = new BankSynchronizer(ws);
+    }
+
+    public WavestationSR getSynth() {
+        return ws;
+    }
+
+    public CompletableFuture<Void> requestGlobalDump() {
+        return queue.submit(() -> {
+            ws.requestGlobalDump();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> requestProgramDump(int bank, int programNumber) {
+        return queue.submit(() -> {
+            ws.requestProgramDump(bank, programNumber);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> sendParameterChange(int paramId, int value) {
+        return queue.submit(() -> {
+            ws.sendParameterChange(paramId, value);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> sendFullPatch(byte[] sysex) {
+        return queue.submit(() -> {
+            ws.sendFullPatch(sysex);
+            return null;
+        }, DumpType.PROGRAM.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Void> sendFullBank(byte[] sysex) {
+        return queue.submit(() -> {
+            ws.sendFullBank(sysex);
+            return null;
+        }, DumpType.BANK.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Uploads a bank, sending only the programs that changed since the last
+     * bank known to be in the device (whole bank the first time). A frame
+     * that is not exactly a bank dump cannot be diffed and is sent as is.
+     */
+    public CompletableFuture<BankSynchronizer.Report> syncBank(byte[] sysex) {
+        if (WavestationSysex.dumpType(sysex) != DumpType.BANK || sysex.length != DumpType.BANK.getFrameLength()) {
+            return queue.submit(() -> {
+                ws.sendFullBank(sysex);
+                synchronizer.forgetAll();   // which bank it overwrote is unknown
+                return new BankSynchronizer.Report(true, new ArrayList<>(), sysex.length);
+            }, DumpType.BANK.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        WavestationBank bank = WavestationBank.copyOf(sysex);
+        return queue.submit(() -> synchronizer.sync(bank),
+                DumpType.BANK.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Requests program {@code programNumber} of {@code bank} and completes with the received frame. */
+    public CompletableFuture<ByteBuffer> dumpProgram(int bank, int programNumber) {
+        return dump(DumpType.PROGRAM, bank, programNumber, () -> ws.requestProgramDump(bank, programNumber));
+    }
+
+    /** Every program of {@code bank}, requested back to back; in program order. */
+    public CompletableFuture<List<ByteBuffer>> dumpPrograms(int bank) {
+        List<CompletableFuture<ByteBuffer>> dumps = new ArrayList<>();
+        for (int p = 0; p < WavestationSysex.PROGRAMS_PER_BANK; p++) {
+            dumps.add(dumpProgram(bank, p));
+        }
+        CompletableFuture<List<ByteBuffer>> all = CompletableFuture.allOf(dumps.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<ByteBuffer> list = new ArrayList<>();
+                    for (CompletableFuture<ByteBuffer> d : dumps) list.add(d.join());
+                    return list;
+                });
+        all.whenComplete((list, ex) -> {
+            if (ex != null) dumps.forEach(d -> d.cancel(false));   // first failure stops the rest
+        });
+        return all;
+    }
+
+    /** Requests a bank dump and completes with the received frame. */
+    public CompletableFuture<ByteBuffer> dumpBank(int bankId) {
+        CompletableFuture<ByteBuffer> dump = dump(DumpType.BANK, bankId, -1, () -> ws.requestBankDump(bankId));
+        // what we just read is what the device holds: reference for syncBank
+        dump.thenAccept(data -> {
+            byte[] copy = new byte[data.remaining()];
+            data.duplicate().get(copy);
+            synchronizer.remember(copy);
+        });
+        return dump;
+    }
+
+    private CompletableFuture<ByteBuffer> dump(DumpType type, int bank, int program, DumpCorrelator.Request request) {
+        return correlator.request(type, ws.getDeviceId(), bank, program, request);
+    }
+}
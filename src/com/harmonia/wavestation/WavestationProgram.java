@@ -0,0 +1,199 @@
+package com.harmonia.wavestation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One Wavestation program ({@value WavestationSysex#PROGRAM_SIZE} unpacked bytes).
+ *
+ * A program obtained from a {@link WavestationBank} writes every change back
+ * into the bank dump at once; a standalone program only holds its data.
+ */
+public class WavestationProgram {
+
+    public static final int NAME_OFFSET = 0;
+    public static final int NAME_LENGTH = 16;
+
+    /** Waves A..D, one block each after the common parameters. */
+    public static final int WAVE_COUNT = 4;
+    public static final int WAVE_OFFSET = 32;
+    public static final int WAVE_SIZE = 96;
+
+    /**
+     * One numeric field of the program data: where it is, how it is encoded
+     * (one byte, or two bytes LSB first; two's complement if signed) and the
+     * range of its values.
+     */
+    public static final class Parameter {
+        private final String name;
+        private final int wave;       // 0..3, -1 for a common parameter
+        private final int offset;
+        private final int width;
+        private final boolean signed;
+        private final int min;
+        private final int max;
+
+        private Parameter(String name, int wave, int offset, int width, boolean signed, int min, int max) {
+            this.name = name;
+            this.wave = wave;
+            this.offset = offset;
+            this.width = width;
+            this.signed = signed;
+            this.min = min;
+            this.max = max;
+        }
+
+        public String getName() { return name; }
+        /** Wave 0..3 (A..D) the parameter belongs to, -1 if common. */
+        public int getWave() { return wave; }
+        public int getOffset() { return offset; }
+        public int getMin() { return min; }
+        public int getMax() { return max; }
+
+        int read(byte[] data) {
+            int v = width == 2 ? (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 : data[offset] & 0xFF;
+            if (signed) v = width == 2 ? (short) v : (byte) v;
+            return v;
+        }
+
+        /** {@code value} mapped from this parameter's range to 0..1, clamped. */
+        public float normalize(int value) {
+            if (value <= min) return 0;
+            if (value >= max) return 1;
+            return (value - min) / (float) (max - min);
+        }
+
+        @Override
+        public String toString() {
+            return wave < 0 ? name : (char) ('A' + wave) + "." + name;
+        }
+    }
+
+    /** Common parameters, then the parameters of waves A..D. */
+    public static final List<Parameter> PARAMETERS;
+
+    /** Common parameter: number of active waves, 0 = 1 wave, 1 = 2 waves, 2 = 4 waves. */
+    public static final Parameter STRUCTURE;
+
+    static {
+        List<Parameter> list = new ArrayList<>();
+        STRUCTURE = new Parameter("Structure", -1, 16, 1, false, 0, 2);
+        list.add(STRUCTURE);
+        list.add(new Parameter("BendRange", -1, 17, 1, false, 0, 12));
+        list.add(new Parameter("MixRate", -1, 18, 1, false, 0, 99));
+        list.add(new Parameter("MixX", -1, 19, 1, true, -127, 127));
+        list.add(new Parameter("MixY", -1, 20, 1, true, -127, 127));
+        for (int w = 0; w < WAVE_COUNT; w++) {
+            int base = WAVE_OFFSET + w * WAVE_SIZE;
+            list.add(new Parameter("Wave", w, base, 2, false, 0, 483));
+            list.add(new Parameter("Level", w, base + 2, 1, false, 0, 99));
+            list.add(new Parameter("Coarse", w, base + 3, 1, true, -24, 24));
+            list.add(new Parameter("Fine", w, base + 4, 1, true, -99, 99));
+            list.add(new Parameter("Cutoff", w, base + 5, 1, false, 0, 99));
+            list.add(new Parameter("FilterKeyboard", w, base + 6, 1, true, -99, 99));
+            list.add(new Parameter("AmpAttack", w, base + 7, 1, false, 0, 99));
+            list.add(new Parameter("AmpDecay", w, base + 8, 1, false, 0, 99));
+            list.add(new Parameter("AmpSustain", w, base + 9, 1, false, 0, 99));
+            list.add(new Parameter("AmpRelease", w, base + 10, 1, false, 0, 99));
+            list.add(new Parameter("Lfo1Rate", w, base + 11, 1, false, 0, 99));
+            list.add(new Parameter("Lfo1Amount", w, base + 12, 1, false, 0, 99));
+        }
+        PARAMETERS = Collections.unmodifiableList(list);
+    }
+
+    private final byte[] data;
+    private final WavestationBank bank;   // null if standalone
+    private final int index;
+
+    WavestationProgram(byte[] data, WavestationBank bank, int index) {
+        this.data = data;
+        this.bank = bank;
+        this.index = index;
+    }
+
+    public static WavestationProgram of(byte[] data) {
+        if (data.length != WavestationSysex.PROGRAM_SIZE) {
+            throw new IllegalArgumentException("Programme Wavestation : " + data.length + " octets");
+        }
+        return new WavestationProgram(data.clone(), null, -1);
+    }
+
+    /** Program carried by a program dump frame. */
+    public static WavestationProgram fromDump(byte[] frame) {
+        if (WavestationSysex.dumpType(frame) != DumpType.PROGRAM
+                || frame.length != DumpType.PROGRAM.getFrameLength()) {
+            throw new IllegalArgumentException("SysEx programme Wavestation invalide");
+        }
+        return new WavestationProgram(WavestationSysex.unpackData(frame, DumpType.PROGRAM), null, -1);
+    }
+
+    /** Program dump frame for this program, to be stored at {@code bank}/{@code program}. */
+    public byte[] toDump(int deviceId, int bankNumber, int programNumber) {
+        return WavestationSysex.buildFrame(DumpType.PROGRAM, deviceId,
+                new int[] { bankNumber, programNumber }, data);
+    }
+
+    /** Index in its bank, -1 if standalone. */
+    public int getIndex() {
+        return index;
+    }
+
+    public int get(int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    /** Decoded value of {@code p} (signed parameters come back negative). */
+    public int get(Parameter p) {
+        return p.read(data);
+    }
+
+    /** Waves in use according to {@link #STRUCTURE}: 1, 2 or 4. */
+    public int getActiveWaves() {
+        return 1 << Math.min(get(STRUCTURE), 2);
+    }
+
+    public void set(int offset, int value) {
+        if (data[offset] == (byte) value) return;
+        data[offset] = (byte) value;
+        if (bank != null) {
+            bank.writeByte(index * WavestationSysex.PROGRAM_SIZE + offset, value & 0xFF);
+        }
+    }
+
+    public String getName() {
+        return decodeName(Arrays.copyOfRange(data, NAME_OFFSET, NAME_OFFSET + NAME_LENGTH));
+    }
+
+    public void setName(String name) {
+        byte[] ascii = name.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < NAME_LENGTH; i++) {
+            set(NAME_OFFSET + i, i < ascii.length ? ascii[i] & 0x7F : ' ');
+        }
+    }
+
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    /** True if both programs hold the same data. */
+    public boolean sameDataAs(WavestationProgram other) {
+        return Arrays.equals(data, other.data);
+    }
+
+    static String decodeName(byte[] raw) {
+        char[] c = new char[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            int b = raw[i] & 0x7F;
+            c[i] = b >= 0x20 ? (char) b : ' ';
+        }
+        return new String(c).trim();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -1,21 +1,67 @@
 package com.harmonia.wavestation;
 
 import javax.sound.midi.*;
+
+import com.harmonia.midi.SysexTransmitter;
+import com.harmonia.midi.TransferMetrics;
+
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WavestationSR {
 	
     private static final byte KORG_ID = 0x42;
     private static final byte WAVESTATION_MODEL_ID = 0x28;
 
+    // attente max de l'ACK/NAK une fois la trame partie
+    private static final long ACK_TIMEOUT_MS = 1500;
+    // ACK manqus d'affile avant de passer au cadencement seul
+    private static final int ACK_MAX_MISSES = 3;
+    // en cadencement seul, on attend de nouveau l'ACK tous les N dumps
+    private static final int ACK_REPROBE_INTERVAL = 16;
+
     private final Receiver outReceiver;
     private final int deviceId; // typical 0x30 for global channel 1
+    private final SysexTransmitter transmitter;
+
+    private volatile CompletableFuture<Boolean> handshake;  // true = ACK, false = NAK
+    private volatile boolean lateNak;                       // NAK reu aprs le timeout
+    private volatile int missedAcks;                        // ACK manqus d'affile
+    private int pacedSends;                                 // dumps sans attente depuis le dernier essai
 
     public WavestationSR(Receiver outReceiver, int deviceId) {
+        this(outReceiver, deviceId, new SysexTransmitter(outReceiver));
+    }
+
+    public WavestationSR(Receiver outReceiver, int deviceId, SysexTransmitter transmitter) {
         this.outReceiver = outReceiver;
         this.deviceId = deviceId & 0x7F;
+        this.transmitter = transmitter;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public SysexTransmitter getTransmitter() {
+        return transmitter;
+    }
+
+    /**
+     * A brancher sur le MidiInputReceiver pour recevoir les ACK/NAK
+     * (DATA LOAD COMPLETED / DATA LOAD ERROR) aprs l'envoi d'un dump.
+     */
+    public void onSysexReceived(byte[] sysex) {
+        int function = WavestationSysex.handshakeFunction(sysex, deviceId);
+        CompletableFuture<Boolean> pending = handshake;
+        if (function < 0 || pending == null) return;
+        pending.complete(function == WavestationSysex.FUNC_DATA_LOAD_COMPLETED);
     }
 
     // Build a SysEx array with F0 .. F7
@@ -28,10 +74,8 @@ public class WavestationSR {
     }
 
     private void sendRawSysEx(byte[] fullMessage) throws Exception {
-        SysexMessage msg = new SysexMessage();
-        msg.setMessage(fullMessage, fullMessage.length);
-        outReceiver.send(msg, -1);
-        Thread.sleep(30); // dlai scurit Korg
+        // cadenc au dbit MIDI au lieu d'un dlai fixe de 30 ms
+        transmitter.send(fullMessage);
     }
 
     // Exemple: Global Dump Request (Korg): F0 42 <deviceID> 3E 00 F7
@@ -42,6 +86,8 @@ public class WavestationSR {
 
     // Exemple: Request Program Dump (program number 0..127) - format dpend du modle
     // Ici je fournis un exemple gnrique ; vrifie le manuel Korg pour l'ID exact.
+    /** @deprecated requte d'exemple sans banque, le SR n'y rpond pas : utiliser {@link #requestProgramDump(int, int)} */
+    @Deprecated
     public void requestProgramDump(int programNumber) throws Exception {
     	byte[] body = {
     			(byte) 0x42,
@@ -70,12 +116,7 @@ public class WavestationSR {
     }
     
     public void sendFullPatch(byte[] sysex) throws Exception {
-        SysexMessage msg = new SysexMessage();
-        msg.setMessage(sysex, sysex.length);
-        outReceiver.send(msg, -1);
-
-        // dlai scurit Korg
-        Thread.sleep(30);
+        sendDump(sysex);
     }
 
     public boolean isValidWavestationPatch(byte[] sysex) {
@@ -107,6 +148,25 @@ public class WavestationSR {
         sendSysex(sysex);
     }
 
+    /**
+     * Demande un programme prcis : F0 42 3n 28 10 00 bank prog F7
+     * (mme requte que le dump de banque, sous-fonction 00)
+     */
+    public void requestProgramDump(int bankId, int programNumber) throws Exception {
+        byte[] sysex = new byte[] {
+            (byte) 0xF0,
+            KORG_ID,
+            (byte) (0x30 | deviceId),
+            WAVESTATION_MODEL_ID,
+            0x10,                  // Request Data
+            0x00,                  // Program dump
+            (byte) (bankId & 0x7F),
+            (byte) (programNumber & 0x7F),
+            (byte) 0xF7
+        };
+        sendSysex(sysex);
+    }
+
     /**
      * Envoie une banque complte au Wavestation
      * (le SysEx doit tre EXACTEMENT celui dun bank dump)
@@ -116,9 +176,7 @@ public class WavestationSR {
             throw new IllegalArgumentException("SysEx banque Wavestation invalide");
         }
 
-        SysexMessage msg = new SysexMessage();
-        msg.setMessage(sysex, sysex.length);
-        outReceiver.send(msg, -1);
+        sendDump(sysex);
     }
 
     /**
@@ -139,9 +197,73 @@ public class WavestationSR {
      */
 
     private void sendSysex(byte[] sysex) throws Exception {
-        SysexMessage msg = new SysexMessage();
-        msg.setMessage(sysex, sysex.length);
-        outReceiver.send(msg, -1);
+        transmitter.send(sysex);
+    }
+
+    /**
+     * Envoie un dump en morceaux cadencs puis attend l'ACK/NAK du Wavestation.
+     * Aprs {@value #ACK_MAX_MISSES} ACK manqus d'affile on se contente du
+     * cadencement, en attendant de nouveau l'ACK tous les
+     * {@value #ACK_REPROBE_INTERVAL} dumps. Une rponse arrive aprs le
+     * timeout compte encore : un NAK tardif fait chouer le dump suivant.
+     */
+    private void sendDump(byte[] sysex) throws Exception {
+        if (lateNak) {
+            lateNak = false;
+            TransferMetrics.get().uploadFailed();
+            throw new IOException("Le Wavestation a refus le dump prcdent (DATA LOAD ERROR tardif)");
+        }
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        AtomicLong repliedAt = new AtomicLong();
+        reply.whenComplete((ok, ex) -> repliedAt.set(System.nanoTime()));
+        TransferMetrics metrics = TransferMetrics.get();
+        long start = System.nanoTime();
+        handshake = reply;   // reste arm aprs le retour pour une rponse tardive
+        try {
+            transmitter.send(sysex);
+            transmitter.drain();   // dernier octet sur le fil
+            long wireEnd = System.nanoTime();
+
+            boolean wait = missedAcks < ACK_MAX_MISSES || ++pacedSends >= ACK_REPROBE_INTERVAL;
+            Boolean ack = null;
+            if (wait) {
+                pacedSends = 0;
+                try {
+                    ack = reply.get(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    metrics.ackTimeout();
+                    if (missedAcks < ACK_MAX_MISSES) missedAcks++;
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+
+            if (ack == null) {
+                // pas de rponse  temps (ou pas attendue) : on surveille une rponse tardive
+                reply.thenAccept(ok -> {
+                    metrics.ack(ok, Math.max(0, System.nanoTime() - wireEnd));
+                    missedAcks = 0;
+                    if (!ok) lateNak = true;
+                });
+                metrics.uploadCompleted(wireEnd - start, sysex.length);
+                return;
+            }
+
+            missedAcks = 0;
+            long at = repliedAt.get();
+            metrics.ack(ack, Math.max(0, (at != 0 ? at : System.nanoTime()) - wireEnd));
+            if (!ack) {
+                throw new IOException("Le Wavestation a refus les donnes (DATA LOAD ERROR)");
+            }
+            metrics.uploadCompleted(wireEnd - start, sysex.length);
+        } catch (InterruptedException e) {
+            transmitter.abort();   // annule les morceaux encore planifis
+            metrics.uploadFailed();
+            throw e;
+        } catch (Exception e) {
+            metrics.uploadFailed();
+            throw e;
+        }
     }
 
 }
@@ -0,0 +1,163 @@
+package com.harmonia.wavestation;
+
+import com.harmonia.midi.ErrorListener;
+import com.harmonia.midi.MidiCommandQueue;
+import com.harmonia.midi.MidiInputReceiver;
+import com.harmonia.midi.MidiManager;
+import com.harmonia.midi.MidiOutputScheduler;
+import com.harmonia.midi.MidiSessionRecorder;
+import com.harmonia.midi.SysexTransmitter;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Everything needed to talk to one Wavestation on one MIDI IN/OUT pair:
+ * the ports, a single output Receiver, the input receiver, the dump correlator,
+ * the output scheduler, one {@link WavestationSR} and its
+ * {@link WavestationClient}.
+ *
+ * Built once when the ports are opened and reused by every action;
+ * {@link #close} releases the thread, the receivers and the devices.
+ */
+public class WavestationSession implements AutoCloseable {
+
+    private final MidiManager manager = new MidiManager();
+    private final MidiCommandQueue queue;
+    private final MidiInputReceiver receiver;   // null without MIDI IN
+    private final DumpCorrelator correlator;
+    private MidiOutputScheduler scheduler;
+    private MidiSessionRecorder.OutputTap outputTap;
+    private MidiSessionRecorder recorder;
+    private final WavestationSR synth;
+    private final WavestationClient client;
+    private final MidiDevice.Info input;
+    private final MidiDevice.Info output;
+    private volatile boolean closed;
+    private volatile ErrorListener errorListener = ErrorListener.LOG;
+
+    private WavestationSession(MidiDevice.Info input, MidiDevice.Info output, int deviceId,
+                               MidiInputReceiver.MessageListener uiListener, String threadName)
+            throws MidiUnavailableException {
+        this.input = input;
+        this.output = output;
+        this.queue = new MidiCommandQueue(threadName);
+        this.correlator = new DumpCorrelator(queue);
+        this.receiver = input == null ? null : new MidiInputReceiver(uiListener);
+        try {
+            outputTap = new MidiSessionRecorder.OutputTap(manager.getOutputReceiver(output));
+            Receiver out = outputTap;
+            scheduler = new MidiOutputScheduler(out, manager.getOutputDevice());
+            scheduler.setDeviceTimestamps(true);   // only if the port has a clock
+            synth = new WavestationSR(out, deviceId, new SysexTransmitter(out, scheduler));
+            if (receiver != null) {
+                receiver.addSysexListener(correlator::onSysexReceived);
+                receiver.addSysexListener(synth::onSysexReceived);   // ACK/NAK des dumps envoyes
+                manager.openInput(input, receiver);
+            }
+        } catch (MidiUnavailableException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        client = new WavestationClient(synth, correlator, queue);
+    }
+
+    /**
+     * Opens {@code input} (may be null: no dumps nor ACK) and {@code output}.
+     *
+     * @param uiListener notified on the EDT for every incoming message, may be null
+     */
+    public static WavestationSession open(MidiDevice.Info input, MidiDevice.Info output, int deviceId,
+                                          MidiInputReceiver.MessageListener uiListener)
+            throws MidiUnavailableException {
+        return new WavestationSession(input, output, deviceId, uiListener, "midi-out");
+    }
+
+    /** Same as {@link #open} with a named output thread (several sessions at once). */
+    public static WavestationSession open(MidiDevice.Info input, MidiDevice.Info output, int deviceId,
+                                          MidiInputReceiver.MessageListener uiListener, String name)
+            throws MidiUnavailableException {
+        return new WavestationSession(input, output, deviceId, uiListener, "midi-out-" + name);
+    }
+
+    /** Errors of the session's background threads (input dispatch, output scheduler), instead of the log. */
+    public void setErrorListener(ErrorListener listener) {
+        errorListener = listener != null ? listener : ErrorListener.LOG;
+        if (receiver != null) receiver.setErrorListener(errorListener);
+        if (scheduler != null) scheduler.setErrorListener(errorListener);
+    }
+
+    public WavestationClient getClient() {
+        return client;
+    }
+
+    public WavestationSR getSynth() {
+        return synth;
+    }
+
+    public DumpCorrelator getCorrelator() {
+        return correlator;
+    }
+
+    /** Input receiver, null if the session has no MIDI IN. */
+    public MidiInputReceiver getReceiver() {
+        return receiver;
+    }
+
+    public MidiOutputScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /** Records all MIDI traffic of this session into {@code file} until {@link #stopRecording}. */
+    public synchronized void startRecording(Path file) throws IOException {
+        stopRecording();
+        recorder = new MidiSessionRecorder(file);
+        outputTap.setRecorder(recorder);
+        if (receiver != null) receiver.setRecorder(recorder);
+    }
+
+    public synchronized void stopRecording() throws IOException {
+        if (recorder == null) return;
+        outputTap.setRecorder(null);
+        if (receiver != null) receiver.setRecorder(null);
+        MidiSessionRecorder r = recorder;
+        recorder = null;
+        r.close();
+    }
+
+    public synchronized boolean isRecording() {
+        return recorder != null;
+    }
+
+    public MidiDevice.Info getInput() {
+        return input;
+    }
+
+    public MidiDevice.Info getOutput() {
+        return output;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** Idempotent. Pending commands are cancelled. */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            errorListener.onError("Erreur de fin d'enregistrement", e);
+        }
+        queue.close();
+        if (scheduler != null) scheduler.close();
+        correlator.cancelAll();
+        if (receiver != null) receiver.close();
+        manager.closeAll();
+    }
+}
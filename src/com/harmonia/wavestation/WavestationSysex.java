@@ -0,0 +1,164 @@
+package com.harmonia.wavestation;
+
+/**
+ * Wavestation SR SysEx format helpers (frame layout, lengths, headers).
+ */
+public final class WavestationSysex {
+
+    public static final int KORG_ID = 0x42;
+    public static final int MODEL_ID = 0x28;
+
+    // Wavestation -> host handshake after a dump has been received
+    public static final int FUNC_DATA_LOAD_COMPLETED = 0x23;   // ACK
+    public static final int FUNC_DATA_LOAD_ERROR = 0x24;       // NAK
+
+    public static final int PROGRAM_SIZE = 426;      // octets par programme (non packes)
+    public static final int PROGRAMS_PER_BANK = 35;
+    public static final int GLOBAL_SIZE = 76;
+
+    public static final int MIDI_BAUD = 31250;       // 10 bits par octet (start + 8 + stop)
+
+    private WavestationSysex() { }
+
+    /** Channel byte used in headers: 3n, n = global MIDI channel. */
+    public static int channelByte(int deviceId) {
+        return 0x30 | (deviceId & 0x0F);
+    }
+
+    /** Length of {@code size} bytes once 7-bit packed (one MSB byte per group of 7). */
+    public static int packedLength(int size) {
+        return size + (size + 6) / 7;
+    }
+
+    public static long wireTimeMillis(int bytes) {
+        return (bytes * 10L * 1000L + MIDI_BAUD - 1) / MIDI_BAUD;
+    }
+
+    /** Header prefix (F0 42 3n 28 function) identifying a dump of the given type. */
+    public static byte[] dumpHeader(DumpType type, int deviceId) {
+        return new byte[] {
+            (byte) 0xF0,
+            (byte) KORG_ID,
+            (byte) channelByte(deviceId),
+            (byte) MODEL_ID,
+            (byte) type.getFunction()
+        };
+    }
+
+    /**
+     * Returns FUNC_DATA_LOAD_COMPLETED / FUNC_DATA_LOAD_ERROR if {@code sysex}
+     * is an ACK/NAK (F0 42 3n 28 23|24 F7) for the given device, -1 otherwise.
+     */
+    public static int handshakeFunction(byte[] sysex, int deviceId) {
+        if (sysex.length != 6 || !isWavestationFrame(sysex)) return -1;
+        if ((sysex[2] & 0xFF) != channelByte(deviceId)) return -1;
+        int function = sysex[4] & 0xFF;
+        return function == FUNC_DATA_LOAD_COMPLETED || function == FUNC_DATA_LOAD_ERROR ? function : -1;
+    }
+
+    /**
+     * Korg 7-bit packing: each group of up to 7 bytes is sent as one byte
+     * holding their bit 7 (bit i = byte i of the group) followed by the 7
+     * bytes with bit 7 cleared. Returns the number of bytes written.
+     */
+    public static int pack(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        int o = dstOff;
+        for (int g = 0; g < len; g += 7) {
+            int n = Math.min(7, len - g);
+            int msb = 0;
+            for (int i = 0; i < n; i++) {
+                byte b = src[off + g + i];
+                msb |= ((b >> 7) & 1) << i;
+                dst[o + 1 + i] = (byte) (b & 0x7F);
+            }
+            dst[o] = (byte) msb;
+            o += n + 1;
+        }
+        return o - dstOff;
+    }
+
+    /** Reverse of {@link #pack}: decodes {@code size} bytes from packed data at {@code off}. */
+    public static void unpack(byte[] src, int off, byte[] dst, int dstOff, int size) {
+        int s = off;
+        for (int g = 0; g < size; g += 7) {
+            int n = Math.min(7, size - g);
+            int msb = src[s];
+            for (int i = 0; i < n; i++) {
+                dst[dstOff + g + i] = (byte) ((src[s + 1 + i] & 0x7F) | (((msb >> i) & 1) << 7));
+            }
+            s += n + 1;
+        }
+    }
+
+    /** Checksum of a frame: sum of the packed data bytes, 7 bits. */
+    public static int checksum(byte[] frame, int off, int len) {
+        int sum = 0;
+        for (int i = off; i < off + len; i++) {
+            sum += frame[i];
+        }
+        return sum & 0x7F;
+    }
+
+    /** Unpacked data of a complete frame of the given type. */
+    public static byte[] unpackData(byte[] frame, DumpType type) {
+        byte[] data = new byte[type.getDataSize()];
+        unpack(frame, type.getHeaderLength(), data, 0, data.length);
+        return data;
+    }
+
+    /** Builds a complete frame: header + params, packed data, checksum, F7. */
+    public static byte[] buildFrame(DumpType type, int deviceId, int[] params, byte[] data) {
+        if (params.length != type.getParamCount() || data.length != type.getDataSize()) {
+            throw new IllegalArgumentException("Trame " + type + " invalide");
+        }
+        byte[] frame = new byte[type.getFrameLength()];
+        System.arraycopy(dumpHeader(type, deviceId), 0, frame, 0, 5);
+        for (int i = 0; i < params.length; i++) {
+            frame[5 + i] = (byte) (params[i] & 0x7F);
+        }
+        int off = type.getHeaderLength();
+        int packed = pack(data, 0, data.length, frame, off);
+        frame[off + packed] = (byte) checksum(frame, off, packed);
+        frame[frame.length - 1] = (byte) 0xF7;
+        return frame;
+    }
+
+    /** True if the frame has the expected length for its type and a valid checksum. */
+    public static boolean isValidDump(byte[] frame) {
+        DumpType type = dumpType(frame);
+        if (type == null || frame.length != type.getFrameLength()) return false;
+        if ((frame[frame.length - 1] & 0xFF) != 0xF7) return false;
+        int off = type.getHeaderLength();
+        int packed = packedLength(type.getDataSize());
+        return checksum(frame, off, packed) == (frame[off + packed] & 0x7F);
+    }
+
+    /** Dump type of a complete Wavestation frame, or null if it is not a known dump. */
+    public static DumpType dumpType(byte[] sysex) {
+        if (!isWavestationFrame(sysex)) return null;
+        DumpType type = DumpType.fromFunction(sysex[4] & 0xFF);
+        if (type == null || sysex.length < type.getHeaderLength()) return null;
+        return type;
+    }
+
+    /** Bank number carried by a program/bank dump header, -1 if none. */
+    public static int bankOf(byte[] sysex) {
+        DumpType type = dumpType(sysex);
+        return type == DumpType.PROGRAM || type == DumpType.BANK ? sysex[5] & 0x7F : -1;
+    }
+
+    /** Program number carried by a program dump header, -1 if none. */
+    public static int programOf(byte[] sysex) {
+        return dumpType(sysex) == DumpType.PROGRAM ? sysex[6] & 0x7F : -1;
+    }
+
+    /** True if {@code sysex} starts with F0 42 3n 28 (any channel). */
+    public static boolean isWavestationFrame(byte[] sysex) {
+        return sysex != null
+            && sysex.length >= 5
+            && (sysex[0] & 0xFF) == 0xF0
+            && (sysex[1] & 0xFF) == KORG_ID
+            && (sysex[2] & 0xF0) == 0x30
+            && (sysex[3] & 0xFF) == MODEL_ID;
+    }
+}
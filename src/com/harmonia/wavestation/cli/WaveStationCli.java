@@ -0,0 +1,431 @@
+package com.harmonia.wavestation.cli;
+
+import com.harmonia.midi.MidiInputReceiver;
+import com.harmonia.midi.MidiManager;
+import com.harmonia.midi.MidiSessionReplayer;
+import com.harmonia.midi.SysexAssembler;
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.PatchArchive;
+import com.harmonia.wavestation.PatchFileManager;
+import com.harmonia.wavestation.SyxImportPipeline;
+import com.harmonia.wavestation.WavestationBank;
+import com.harmonia.wavestation.WavestationClient;
+import com.harmonia.wavestation.WavestationProgram;
+import com.harmonia.wavestation.WavestationSR;
+import com.harmonia.wavestation.WavestationSession;
+import com.harmonia.wavestation.WavestationSysex;
+import com.harmonia.wavestation.library.PatchLibrary;
+import com.harmonia.wavestation.library.PatchSimilarityIndex;
+import com.harmonia.wavestation.sim.VirtualWavestationSR;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless command line front end (no AWT/Swing initialization).
+ *
+ * <pre>
+ * list-devices
+ * dump-bank  --in DEV --out DEV --bank N --file F.syx [--device ID]
+ * send-bank  --out DEV [--in DEV] --file F.syx [--device ID]
+ * send-patch --out DEV [--in DEV] --file F.syx [--device ID]
+ * convert    --file IN.syx --to OUT.syx [--channel N]
+ * convert    --file BANK.syx --split DIR
+ * convert    --file IN.syx --to OUT.wsa     (compressed archive of its dumps)
+ * convert    --dir DIR --to OUT.wsa         (every .syx under DIR)
+ * check      --dir DIR [--out DIR] [--channel N] [--threads N]
+ * replay     --log F.hmrl [--speed X]   (0 = as fast as possible)
+ * similar    --library DIR --file F.syx [--k N]
+ * </pre>
+ *
+ * DEV is an index from list-devices or part of a device name.
+ * {@code --virtual NAME} adds a simulated Wavestation SR named NAME for the
+ * command (default port for --in / --out), to try the commands without
+ * hardware.
+ * Exit codes: 0 ok, 1 usage, 2 MIDI device, 3 timeout / incomplete dump,
+ * 4 file or invalid data.
+ */
+public class WaveStationCli {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_USAGE = 1;
+    public static final int EXIT_DEVICE = 2;
+    public static final int EXIT_TIMEOUT = 3;
+    public static final int EXIT_DATA = 4;
+
+    private static final int DEFAULT_DEVICE_ID = 0x30;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    static final class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    public WaveStationCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new WaveStationCli(System.out, System.err).run(args));
+    }
+
+    public int run(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return EXIT_USAGE;
+        }
+        VirtualWavestationSR virtual = null;
+        try {
+            Map<String, String> opts = parseOptions(args);
+            if (opts.containsKey("virtual")) {
+                String name = opts.get("virtual");
+                virtual = new VirtualWavestationSR(name, intOption(opts, "device", DEFAULT_DEVICE_ID));
+                MidiManager.registerVirtualDevice(virtual);
+                opts.putIfAbsent("in", name);
+                opts.putIfAbsent("out", name);
+            }
+            switch (args[0]) {
+                case "list-devices": return listDevices();
+                case "dump-bank":    return dumpBank(opts);
+                case "send-bank":    return send(opts, true);
+                case "send-patch":   return send(opts, false);
+                case "convert":      return convert(opts);
+                case "check":        return check(opts);
+                case "replay":       return replay(opts);
+                case "similar":      return similar(opts);
+                default:
+                    throw new UsageException("Commande inconnue : " + args[0]);
+            }
+        } catch (UsageException e) {
+            err.println(e.getMessage());
+            usage();
+            return EXIT_USAGE;
+        } catch (MidiUnavailableException e) {
+            err.println("Erreur MIDI : " + e.getMessage());
+            return EXIT_DEVICE;
+        } catch (TimeoutException e) {
+            err.println("Timeout : pas de reponse complete du Wavestation");
+            return EXIT_TIMEOUT;
+        } catch (IOException | IllegalArgumentException e) {
+            err.println("Erreur donnees : " + e.getMessage());
+            return EXIT_DATA;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_TIMEOUT;
+        } catch (Exception e) {
+            err.println("Erreur : " + e);
+            return EXIT_DEVICE;
+        } finally {
+            if (virtual != null) {
+                MidiManager.unregisterVirtualDevice(virtual);
+                virtual.shutdown();
+            }
+        }
+    }
+
+    private int listDevices() {
+        MidiDevice.Info[] infos = MidiManager.getDeviceInfos();
+        for (int i = 0; i < infos.length; i++) {
+            out.println(i + "\t" + infos[i].getName() + " - " + infos[i].getDescription());
+        }
+        return EXIT_OK;
+    }
+
+    private int dumpBank(Map<String, String> opts) throws Exception {
+        int bank = intOption(opts, "bank", -1);
+        if (bank < 0) throw new UsageException("--bank requis");
+        File file = new File(required(opts, "file"));
+
+        try (Session s = new Session(opts, true, err)) {
+            ByteBuffer dump = await(s.client.dumpBank(bank));
+            PatchFileManager.save(file, dump);
+            out.println("Banque " + bank + " : " + dump.remaining() + " octets -> " + file);
+        }
+        return EXIT_OK;
+    }
+
+    private int send(Map<String, String> opts, boolean bank) throws Exception {
+        File file = new File(required(opts, "file"));
+        byte[] sysex = PatchFileManager.load(file);
+
+        try (Session s = new Session(opts, opts.containsKey("in"), err)) {
+            WavestationSR ws = s.client.getSynth();
+            if (bank ? !ws.isValidWavestationBank(sysex) : !ws.isValidWavestationPatch(sysex)) {
+                throw new IOException("Fichier SYX invalide : " + file);
+            }
+            long start = System.nanoTime();
+            await(bank ? s.client.sendFullBank(sysex) : s.client.sendFullPatch(sysex));
+            out.println(sysex.length + " octets envoyes en " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        return EXIT_OK;
+    }
+
+    private int convert(Map<String, String> opts) throws Exception {
+        if (opts.containsKey("dir")) return archiveDirectory(opts);
+        File file = new File(required(opts, "file"));
+        byte[] sysex = PatchFileManager.load(file);
+
+        if (opts.containsKey("split")) {
+            File dir = new File(opts.get("split"));
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Dossier impossible a creer : " + dir);
+            WavestationBank bank = WavestationBank.wrap(sysex);
+            int deviceId = sysex[2] & 0x0F;
+            for (int i = 0; i < bank.size(); i++) {
+                byte[] dump = bank.getProgram(i).toDump(deviceId, bank.getBankNumber(), i);
+                PatchFileManager.save(new File(dir, String.format("bank%d-%02d.syx", bank.getBankNumber(), i)), dump);
+            }
+            out.println(bank.size() + " programmes ecrits dans " + dir);
+            return EXIT_OK;
+        }
+
+        File target = new File(required(opts, "to"));
+        List<byte[]> dumps = PatchFileManager.splitMessages(sysex);
+        if (opts.containsKey("channel")) {
+            // every Wavestation frame of the file, other messages as they are
+            int deviceId = intOption(opts, "channel", 0);
+            int frames = 0;
+            ByteArrayOutputStream all = new ByteArrayOutputStream(sysex.length);
+            for (byte[] msg : dumps) {
+                if (WavestationSysex.isWavestationFrame(msg)) {
+                    SyxImportPipeline.normalize(msg, deviceId);
+                    frames++;
+                }
+                all.write(msg, 0, msg.length);
+            }
+            if (frames == 0) throw new IOException("Pas un dump Wavestation : " + file);
+            sysex = all.toByteArray();
+        }
+        if (isArchiveName(target)) {
+            if (dumps.isEmpty()) throw new IOException("Aucun message SysEx : " + file);
+            PatchFileManager.saveArchive(target, dumps);
+            out.println(dumps.size() + " dump(s), " + sysex.length + " -> " + target.length() + " octets : " + target);
+            return EXIT_OK;
+        }
+        PatchFileManager.save(target, sysex);
+        out.println(file + " -> " + target);
+        return EXIT_OK;
+    }
+
+    // every .syx under --dir into one archive, entries named after the files
+    private int archiveDirectory(Map<String, String> opts) throws Exception {
+        Path dir = Paths.get(required(opts, "dir"));
+        File target = new File(required(opts, "to"));
+        if (!Files.isDirectory(dir)) throw new IOException("Dossier introuvable : " + dir);
+        if (!isArchiveName(target)) throw new UsageException("--dir demande une archive .wsa pour --to");
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(p -> Files.isRegularFile(p) && p.toString().toLowerCase().endsWith(".syx"))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+        long rawBytes = 0;
+        int count = 0;
+        try (PatchArchive.Writer writer = PatchArchive.create(target.toPath())) {
+            for (Path p : files) {
+                List<byte[]> dumps = PatchFileManager.splitMessages(Files.readAllBytes(p));
+                String name = dir.relativize(p).toString().replace(File.separatorChar, '/');
+                for (int i = 0; i < dumps.size(); i++) {
+                    writer.add(dumps.size() == 1 ? name : name + "#" + i, dumps.get(i));
+                    rawBytes += dumps.get(i).length;
+                    count++;
+                }
+            }
+        }
+        out.println(files.size() + " fichier(s), " + count + " dump(s), " + rawBytes + " -> "
+                + target.length() + " octets : " + target);
+        return EXIT_OK;
+    }
+
+    private static boolean isArchiveName(File file) {
+        return file.getName().toLowerCase().endsWith(".wsa");
+    }
+
+    private int check(Map<String, String> opts) throws Exception {
+        Path dir = Paths.get(required(opts, "dir"));
+        if (!Files.isDirectory(dir)) throw new IOException("Dossier introuvable : " + dir);
+        SyxImportPipeline pipeline = new SyxImportPipeline()
+                .setTargetDeviceId(opts.containsKey("channel") ? intOption(opts, "channel", 0) : -1)
+                .setParallelism(intOption(opts, "threads", Runtime.getRuntime().availableProcessors()));
+        if (opts.containsKey("out")) pipeline.setOutputDir(Paths.get(opts.get("out")));
+
+        SyxImportPipeline.Report report = pipeline.run(dir);
+        out.println(report);
+        for (String error : report.getErrors()) err.println(error);
+        return report.getErrors().isEmpty() ? EXIT_OK : EXIT_DATA;
+    }
+
+    // runs a captured session through the receive path and lists the dumps found
+    private int replay(Map<String, String> opts) throws Exception {
+        Path log = Paths.get(required(opts, "log"));
+        double speed = opts.containsKey("speed") ? Double.parseDouble(opts.get("speed")) : 0;
+        SysexAssembler assembler = new SysexAssembler();
+        int[] valid = new int[1];
+        int[] invalid = new int[1];
+        MidiInputReceiver receiver = new MidiInputReceiver(null);
+        receiver.setErrorListener((msg, e) -> err.println(msg + " : " + e));
+        receiver.addSysexListener(chunk -> {
+            if ((chunk[0] & 0xFF) == 0xF0) assembler.reset();
+            if (!assembler.append(chunk) || !assembler.isComplete()) return;
+            byte[] frame = assembler.toByteArray();
+            DumpType type = WavestationSysex.dumpType(frame);
+            if (type == null) return;
+            boolean ok = WavestationSysex.isValidDump(frame);
+            if (ok) valid[0]++;
+            else invalid[0]++;
+            out.println((ok ? "  " : "! ") + type + " " + frame.length + " octets"
+                    + (ok ? "" : " (attendu " + type.getFrameLength() + " ou checksum faux)"));
+        });
+        try {
+            MidiSessionReplayer.Stats stats = new MidiSessionReplayer(log).setSpeed(speed).replay(receiver);
+            receiver.awaitDrained();
+            out.println(stats);
+            out.println(valid[0] + " dump(s) valides, " + invalid[0] + " invalides, "
+                    + receiver.getDroppedCount() + " message(s) perdus");
+        } finally {
+            receiver.close();
+        }
+        return invalid[0] == 0 && receiver.getDroppedCount() == 0 ? EXIT_OK : EXIT_DATA;
+    }
+
+    // nearest programs and exact duplicates in a library for each program of a file
+    private int similar(Map<String, String> opts) throws Exception {
+        Path dir = Paths.get(required(opts, "library"));
+        File file = new File(required(opts, "file"));
+        int k = intOption(opts, "k", 5);
+        if (!Files.isDirectory(dir)) throw new IOException("Bibliotheque introuvable : " + dir);
+
+        PatchSimilarityIndex index;
+        long start = System.nanoTime();
+        try (PatchLibrary library = PatchLibrary.open(dir)) {
+            index = PatchSimilarityIndex.build(library);
+        }
+        out.println(index.size() + " programmes indexes en " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        byte[] sysex = PatchFileManager.load(file);
+        List<WavestationProgram> programs = new ArrayList<>();
+        DumpType type = WavestationSysex.dumpType(sysex);
+        if (type == DumpType.PROGRAM) {
+            programs.add(WavestationProgram.fromDump(sysex));
+        } else if (type == DumpType.BANK) {
+            WavestationBank bank = WavestationBank.wrap(sysex);
+            for (int i = 0; i < bank.size(); i++) programs.add(bank.getProgram(i));
+        } else {
+            throw new IOException("Ni programme ni banque Wavestation : " + file);
+        }
+        for (WavestationProgram program : programs) {
+            out.println(program.getName());
+            for (PatchSimilarityIndex.Match m : index.duplicates(program)) out.println("  = " + m.getLabel());
+            for (PatchSimilarityIndex.Match m : index.nearest(program, k)) out.println("  ~ " + m);
+        }
+        return EXIT_OK;
+    }
+
+    /** Ports + protocol for one command. */
+    private static final class Session implements AutoCloseable {
+        final WavestationSession session;
+        final WavestationClient client;
+
+        Session(Map<String, String> opts, boolean needInput, PrintStream err) throws Exception {
+            int deviceId = intOption(opts, "device", DEFAULT_DEVICE_ID);
+            MidiDevice.Info in = needInput ? findDevice(required(opts, "in")) : null;
+            session = WavestationSession.open(in, findDevice(required(opts, "out")), deviceId, null);
+            session.setErrorListener((msg, e) -> err.println(msg + " : " + e));
+            client = session.getClient();
+        }
+
+        @Override
+        public void close() {
+            session.close();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    static MidiDevice.Info findDevice(String spec) throws MidiUnavailableException {
+        MidiDevice.Info[] infos = MidiManager.getDeviceInfos();
+        try {
+            int index = Integer.parseInt(spec);
+            if (index >= 0 && index < infos.length) return infos[index];
+        } catch (NumberFormatException notAnIndex) {
+            for (MidiDevice.Info info : infos) {
+                if (info.getName().toLowerCase().contains(spec.toLowerCase())) return info;
+            }
+        }
+        throw new MidiUnavailableException("Peripherique MIDI introuvable : " + spec);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) throws UsageException {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new UsageException("Argument inattendu : " + args[i]);
+            String key = args[i].substring(2);
+            if (i + 1 >= args.length) throw new UsageException("Valeur manquante pour --" + key);
+            opts.put(key, args[++i]);
+        }
+        return opts;
+    }
+
+    private static String required(Map<String, String> opts, String key) throws UsageException {
+        String v = opts.get(key);
+        if (v == null) throw new UsageException("--" + key + " requis");
+        return v;
+    }
+
+    private static int intOption(Map<String, String> opts, String key, int def) throws UsageException {
+        String v = opts.get(key);
+        if (v == null) return def;
+        try {
+            return Integer.decode(v);
+        } catch (NumberFormatException e) {
+            throw new UsageException("Valeur invalide pour --" + key + " : " + v);
+        }
+    }
+
+    private void usage() {
+        err.println("Usage : WaveStationCli <commande> [options]");
+        err.println("  list-devices");
+        err.println("  dump-bank  --in DEV --out DEV --bank N --file F.syx [--device ID]");
+        err.println("  send-bank  --out DEV [--in DEV] --file F.syx [--device ID]");
+        err.println("  send-patch --out DEV [--in DEV] --file F.syx [--device ID]");
+        err.println("  convert    --file IN.syx --to OUT.syx [--channel N]");
+        err.println("  convert    --file BANK.syx --split DIR");
+        err.println("  convert    --file IN.syx --to OUT.wsa | --dir DIR --to OUT.wsa");
+        err.println("  check      --dir DIR [--out DIR] [--channel N] [--threads N]");
+        err.println("  replay     --log F.hmrl [--speed X]");
+        err.println("  similar    --library DIR --file F.syx [--k N]");
+        err.println("  --virtual NOM : Wavestation SR simule (port par defaut de --in / --out)");
+    }
+}
@@ -0,0 +1,217 @@
+package com.harmonia.wavestation.gui;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.SysexMessage;
+import javax.swing.*;
+
+import com.harmonia.midi.Hex;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MIDI monitor: a virtualized JList over a bounded ring of entries.
+ *
+ * {@link #log} and {@link #logMidi} can be called from any thread; entries are
+ * queued and flushed into the list at most {@link #FPS} times per second.
+ * Entry text is built only when a row is painted, and large SysEx messages are
+ * summarized (double-click to see the full hex dump). If the EDT falls behind,
+ * the queue keeps at most one list's worth of entries: older ones, which the
+ * list would overwrite anyway, are dropped and counted.
+ */
+public class MidiMonitorPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_CAPACITY = 5000;
+    private static final int FPS = 30;
+    private static final int SUMMARY_BYTES = 16;
+
+    private final ConcurrentLinkedQueue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();   // approximate size of incoming
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedShown;   // EDT only
+    private final int capacity;
+    private final EntryModel model;
+    private final JList<Entry> list;
+    private final JScrollPane scroll;
+
+    public MidiMonitorPanel() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MidiMonitorPanel(int capacity) {
+        super(new BorderLayout());
+        this.capacity = capacity;
+        model = new EntryModel(capacity);
+        list = new JList<>(model);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        // fixed row size: the list never measures off-screen rows
+        list.setPrototypeCellValue(new Entry("RECV: F0 42 30 28 4C 00 00 00 00 00 00 00 00 00 00 00 ...", null));
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    int index = list.locationToIndex(e.getPoint());
+                    if (index >= 0) showDetails(model.getElementAt(index));
+                }
+            }
+        });
+        scroll = new JScrollPane(list);
+        add(scroll, BorderLayout.CENTER);
+
+        new Timer(1000 / FPS, e -> flush()).start();
+    }
+
+    public void log(String text) {
+        enqueue(new Entry(text, null));
+    }
+
+    public void logMidi(String prefix, MidiMessage msg) {
+        enqueue(new Entry(prefix, msg.getMessage()));
+    }
+
+    /** Entries dropped before display because the EDT was too far behind. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void clear() {
+        incoming.clear();
+        pending.set(0);
+        model.clear();
+    }
+
+    private void enqueue(Entry e) {
+        incoming.add(e);
+        if (pending.incrementAndGet() > capacity && incoming.poll() != null) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void flush() {
+        if (incoming.isEmpty()) return;
+        JScrollBar bar = scroll.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 4;
+
+        int oldSize = model.getSize();
+        long lost = dropped.get() - droppedShown;
+        if (lost > 0) {
+            droppedShown += lost;
+            model.push(new Entry("... " + lost + " entre(s) non affiche(s), moniteur en retard", null));
+        }
+        Entry e;
+        while ((e = incoming.poll()) != null) {
+            pending.decrementAndGet();
+            model.push(e);
+        }
+        model.fireChanges(oldSize);
+
+        if (atBottom) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    private void showDetails(Entry entry) {
+        if (entry == null || entry.data == null || entry.data.length <= SUMMARY_BYTES) return;
+        JTextArea area = new JTextArea(Hex.dump(entry.data, 16), 24, 64);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        area.setEditable(false);
+        area.setCaretPosition(0);
+        JOptionPane.showMessageDialog(this, new JScrollPane(area),
+                entry.prefix + " " + entry.data.length + " octets", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    static final class Entry {
+        final String prefix;
+        final byte[] data;   // null for text entries
+        private String text;
+
+        Entry(String prefix, byte[] data) {
+            this.prefix = prefix;
+            this.data = data;
+        }
+
+        @Override
+        public String toString() {
+            if (text == null) text = format();
+            return text;
+        }
+
+        private String format() {
+            if (data == null) return prefix;
+            StringBuilder sb = new StringBuilder(prefix.length() + 2 + Math.min(data.length, SUMMARY_BYTES) * 3 + 48);
+            sb.append(prefix).append(": ");
+            if (data.length <= SUMMARY_BYTES) {
+                return Hex.append(sb, data, 0, data.length).toString();
+            }
+            boolean sysex = (data[0] & 0xFF) == SysexMessage.SYSTEM_EXCLUSIVE
+                    || (data[0] & 0xFF) == SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE;
+            sb.append(sysex ? "SysEx " : "").append(data.length).append(" octets : ");
+            Hex.append(sb, data, 0, SUMMARY_BYTES).append("... ");
+            Hex.append(sb, data, data.length - 1, 1);
+            return sb.append("(double-clic)").toString();
+        }
+    }
+
+    /** List model over a circular array; the oldest entries are overwritten. */
+    private static final class EntryModel extends AbstractListModel<Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final Entry[] ring;
+        private int start;
+        private int size;
+        private int evicted;   // entries overwritten since the last fireChanges
+
+        EntryModel(int capacity) {
+            ring = new Entry[capacity];
+        }
+
+        void push(Entry e) {
+            if (size < ring.length) {
+                ring[(start + size) % ring.length] = e;
+                size++;
+            } else {
+                ring[start] = e;
+                start = (start + 1) % ring.length;
+                evicted++;
+            }
+        }
+
+        void fireChanges(int oldSize) {
+            if (size > oldSize) {
+                fireIntervalAdded(this, oldSize, size - 1);
+            }
+            if (evicted > 0) {
+                // the window slid: one repaint of the (bounded) list per frame
+                evicted = 0;
+                fireContentsChanged(this, 0, size - 1);
+            }
+        }
+
+        void clear() {
+            int old = size;
+            Arrays.fill(ring, null);
+            start = 0;
+            size = 0;
+            evicted = 0;
+            if (old > 0) fireIntervalRemoved(this, 0, old - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public Entry getElementAt(int index) {
+            return ring[(start + index) % ring.length];
+        }
+    }
+}
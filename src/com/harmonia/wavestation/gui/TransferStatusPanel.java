@@ -0,0 +1,59 @@
+package com.harmonia.wavestation.gui;
+
+import javax.swing.*;
+
+import com.harmonia.midi.TransferMetrics;
+
+import java.awt.*;
+
+/**
+ * Status bar showing {@link TransferMetrics}: throughput, dump and upload
+ * latencies, errors and input queue depth. Refreshed once per second;
+ * the same values are available over JMX.
+ */
+public class TransferStatusPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private static final int REFRESH_MS = 1000;
+
+    private final TransferMetrics metrics = TransferMetrics.get();
+    private final JLabel traffic = new JLabel();
+    private final JLabel dumps = new JLabel();
+    private final JLabel uploads = new JLabel();
+    private final Timer timer;
+
+    public TransferStatusPanel() {
+        super(new FlowLayout(FlowLayout.LEFT, 12, 2));
+        JButton reset = new JButton("Reset");
+        reset.setMargin(new Insets(0, 4, 0, 4));
+        reset.addActionListener(e -> {
+            metrics.reset();
+            refresh();
+        });
+        add(traffic);
+        add(dumps);
+        add(uploads);
+        add(reset);
+
+        timer = new Timer(REFRESH_MS, e -> refresh());
+        timer.start();
+        refresh();
+    }
+
+    private void refresh() {
+        traffic.setText(String.format("IN %.0f o/s  OUT %.0f o/s  file %d (max %d)  perdus %d",
+                metrics.getBytesInPerSecond(), metrics.getBytesOutPerSecond(),
+                metrics.getInputQueueDepth(), metrics.getInputQueueHighWater(), metrics.getInputDropped()));
+        dumps.setText(String.format("Dumps %d  p50 %.0f / p95 %.0f ms  %.0f o/s  incomplets %d  timeouts %d",
+                metrics.getDumpsCompleted(), metrics.getDumpLatencyP50Millis(), metrics.getDumpLatencyP95Millis(),
+                metrics.getLastDumpBytesPerSecond(), metrics.getDumpsIncomplete(), metrics.getDumpsTimedOut()));
+        uploads.setText(String.format("Envois %d  p50 %.0f ms  %.0f o/s  echecs %d  ACK %d (p50 %.0f ms) NAK %d sans ACK %d",
+                metrics.getUploadsCompleted(), metrics.getUploadLatencyP50Millis(),
+                metrics.getLastUploadBytesPerSecond(), metrics.getUploadsFailed(), metrics.getAcks(),
+                metrics.getAckLatencyP50Millis(), metrics.getNaks(), metrics.getAckTimeouts()));
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+}
@@ -5,23 +5,34 @@ import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-import com.harmonia.midi.MidiInputReceiver;
-import com.harmonia.midi.MidiManager;
-import com.harmonia.midi.SysexDumpCollector;
+import com.harmonia.midi.MidiDeviceRegistry;
+import com.harmonia.midi.ParameterStreamer;
 import com.harmonia.wavestation.PatchFileManager;
+import com.harmonia.wavestation.WavestationClient;
 import com.harmonia.wavestation.WavestationSR;
+import com.harmonia.wavestation.WavestationSession;
+import com.harmonia.wavestation.WavestationSysex;
 
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.prefs.Preferences;
 
 public class WaveStationEditor {
     private JFrame frame;
     private JComboBox<String> inCombo;
     private JComboBox<String> outCombo;
-    private JTextArea logArea;
+    private MidiMonitorPanel monitor;
     private JButton btnOpenPorts;
+    private JToggleButton btnRecord;
     private JButton btnGlobalDump;
     private JButton btnRequestProgram;
     private JSlider sliderCutoff;
@@ -37,25 +48,42 @@ public class WaveStationEditor {
 
 
 
-    private MidiManager midiManager = new MidiManager();
-    private MidiInputReceiver midiReceiver;
-    private Receiver outReceiver;
-    private MidiDevice.Info[] infos;
-    
-    private SysexDumpCollector dumpCollector = new SysexDumpCollector();
+    private WavestationSession session;   // ports + protocol, one per open port pair
+    private WavestationClient client;
+    private ParameterStreamer paramStreamer;
+    private MidiDevice.Info[] infos = new MidiDevice.Info[0];   // same order as the combos
+    private String openInKey;    // stable keys of the open ports
+    private String openOutKey;
+    private final Preferences prefs = Preferences.userNodeForPackage(WaveStationEditor.class);
 
 
     // default device id used in examples (0x30 is common for Korg global)
     private final int deviceId = 0x30;
 
+    private static final long HOTPLUG_POLL_MS = 2000;
+    private static final String PREF_IN = "midi.in";
+    private static final String PREF_OUT = "midi.out";
+
+    /** To be called on the EDT: the frame shows at once, MIDI ports come later. */
     public WaveStationEditor() {
         initUI();
-        infos = MidiManager.getDeviceInfos();
+        loadDevicesInBackground();
     }
 
     private void initUI() {
         frame = new JFrame("Wavestation SR - MIDI Editor (Swing)");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (session != null) session.close();
+            }
+
+            @Override
+            public void windowOpened(WindowEvent e) {
+                logStartup("Fenêtre affichée");
+            }
+        });
         frame.setSize(1000, 600);
 
         JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -67,15 +95,20 @@ public class WaveStationEditor {
         top.add(new JLabel("MIDI OUT:"));
         top.add(outCombo);
         top.add(btnOpenPorts);
+        btnRecord = new JToggleButton("Enregistrer session");
+        btnRecord.addActionListener(e -> onRecordToggled());
+        top.add(btnRecord);
 
-        // Fill device lists
-        refreshDeviceLists();
+        // filled by loadDevicesInBackground()
+        inCombo.addItem("Recherche des ports MIDI...");
+        outCombo.addItem("Recherche des ports MIDI...");
+        inCombo.setEnabled(false);
+        outCombo.setEnabled(false);
+        btnOpenPorts.setEnabled(false);
 
         btnOpenPorts.addActionListener(e -> onOpenPorts());
 
-        logArea = new JTextArea(12, 60);
-        logArea.setEditable(false);
-        JScrollPane logScroll = new JScrollPane(logArea);
+        monitor = new MidiMonitorPanel();
 
         // Controls
         JPanel controls = new JPanel();
@@ -105,7 +138,7 @@ public class WaveStationEditor {
         controls.add(Box.createVerticalStrut(10));
         controls.add(new JLabel("Program Number"));
 
-        programSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 127, 1));
+        programSpinner = new JSpinner(new SpinnerNumberModel(0, 0, WavestationSysex.PROGRAMS_PER_BANK - 1, 1));
         controls.add(programSpinner);
 
         // --- Export / Import buttons ---
@@ -113,15 +146,43 @@ public class WaveStationEditor {
 
         btnExportPatch = new JButton("Export Patch (.syx)");
         btnImportPatch = new JButton("Import Patch (.syx)");
-        btnExportPatch.addActionListener(e -> exportPatch(0));  // MISSING CONNECTION TO SELECTED PROGRAM
+        btnExportPatch.addActionListener(e -> exportPatch(getSelectedBankId(), (Integer) programSpinner.getValue()));
         btnImportPatch.addActionListener(e -> importPatch());
 
         controls.add(btnExportPatch);
         controls.add(btnImportPatch);
 
-     // --- Bank selector ---
+        // --- Bank tools, built the first time they are shown ---
         controls.add(Box.createVerticalStrut(10));
-        controls.add(new JLabel("Bank"));
+        JToggleButton btnBankTools = new JToggleButton("Outils banque");
+        JPanel bankTools = new JPanel();
+        bankTools.setLayout(new BoxLayout(bankTools, BoxLayout.Y_AXIS));
+        bankTools.setVisible(false);
+        btnBankTools.addActionListener(e -> {
+            if (bankCombo == null) buildBankTools(bankTools);
+            bankTools.setVisible(btnBankTools.isSelected());
+            controls.revalidate();
+        });
+        controls.add(btnBankTools);
+        controls.add(bankTools);
+
+
+        frame.getContentPane().add(top, BorderLayout.NORTH);
+        frame.getContentPane().add(monitor, BorderLayout.CENTER);
+        frame.getContentPane().add(controls, BorderLayout.EAST);
+
+        frame.setVisible(true);
+
+        // the status bar registers the JMX metrics bean: not needed for the first paint
+        SwingUtilities.invokeLater(() -> {
+            frame.getContentPane().add(new TransferStatusPanel(), BorderLayout.SOUTH);
+            frame.revalidate();
+        });
+    }
+
+    private void buildBankTools(JPanel panel) {
+        // --- Bank selector ---
+        panel.add(new JLabel("Bank"));
 
         bankCombo = new JComboBox<>(new String[] {
             "RAM 1",
@@ -129,10 +190,10 @@ public class WaveStationEditor {
             "ROM 1",
             "ROM 2"
         });
-        controls.add(bankCombo);
+        panel.add(bankCombo);
 
         // --- Bank Export / Import ---
-        controls.add(Box.createVerticalStrut(10));
+        panel.add(Box.createVerticalStrut(10));
 
         btnExportBank = new JButton("Export Bank (.syx)");
         btnImportBank = new JButton("Import Bank (.syx)");
@@ -140,26 +201,112 @@ public class WaveStationEditor {
         btnExportBank.addActionListener(e -> exportBank());
         btnImportBank.addActionListener(e -> importBank());
 
-        controls.add(btnExportBank);
-        controls.add(btnImportBank);
+        panel.add(btnExportBank);
+        panel.add(btnImportBank);
+    }
 
+    // first enumeration off the EDT (slow with ALSA); the registry keeps the result
+    private void loadDevicesInBackground() {
+        new SwingWorker<List<MidiDeviceRegistry.Device>, Void>() {
+            @Override
+            protected List<MidiDeviceRegistry.Device> doInBackground() {
+                return MidiDeviceRegistry.get().getDevices();
+            }
 
-        frame.getContentPane().add(top, BorderLayout.NORTH);
-        frame.getContentPane().add(logScroll, BorderLayout.CENTER);
-        frame.getContentPane().add(controls, BorderLayout.EAST);
+            @Override
+            protected void done() {
+                refreshDeviceLists();
+                inCombo.setEnabled(true);
+                outCombo.setEnabled(true);
+                btnOpenPorts.setEnabled(true);
+                logStartup(infos.length + " ports MIDI trouvés");
+
+                MidiDeviceRegistry.get().setErrorListener((msg, err) -> appendLog(msg + " : " + err));
+                MidiDeviceRegistry.get().addListener((added, removed) ->
+                        SwingUtilities.invokeLater(() -> onDevicesChanged(added, removed)));
+                MidiDeviceRegistry.get().startWatching(HOTPLUG_POLL_MS);
+                reopenLastPorts();
+            }
+        }.execute();
+    }
 
-        frame.setVisible(true);
+    // time since the JVM was launched, JVM and class loading included
+    private void logStartup(String what) {
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        appendLog(what + " en " + millis + " ms");
     }
 
     private void refreshDeviceLists() {
+        String inKey = selectedKey(inCombo);
+        String outKey = selectedKey(outCombo);
         inCombo.removeAllItems();
         outCombo.removeAllItems();
-        MidiDevice.Info[] infos = MidiManager.getDeviceInfos();
-        for (MidiDevice.Info info : infos) {
-            String label = info.getName() + " - " + info.getDescription();
+        List<MidiDeviceRegistry.Device> devices = MidiDeviceRegistry.get().getDevices();
+        infos = new MidiDevice.Info[devices.size()];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = devices.get(i).getInfo();
+            String label = devices.get(i).toString();
             inCombo.addItem(label);
             outCombo.addItem(label);
         }
+        select(inCombo, inKey);
+        select(outCombo, outKey);
+    }
+
+    private String selectedKey(JComboBox<String> combo) {
+        int idx = combo.getSelectedIndex();
+        if (idx < 0 || idx >= infos.length) return null;
+        MidiDeviceRegistry.Device d = MidiDeviceRegistry.get().find(infos[idx]);
+        return d == null ? null : d.getKey();
+    }
+
+    private boolean select(JComboBox<String> combo, String key) {
+        MidiDeviceRegistry.Device d = MidiDeviceRegistry.get().find(key);
+        if (d == null) return false;
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i].equals(d.getInfo())) {
+                combo.setSelectedIndex(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // hot-plug, on the EDT
+    private void onDevicesChanged(List<MidiDeviceRegistry.Device> added, List<MidiDeviceRegistry.Device> removed) {
+        refreshDeviceLists();
+        for (MidiDeviceRegistry.Device d : removed) {
+            appendLog("Port MIDI débranché : " + d);
+            if (d.getKey().equals(openInKey) || d.getKey().equals(openOutKey)) {
+                closePorts();
+            }
+        }
+        for (MidiDeviceRegistry.Device d : added) {
+            appendLog("Port MIDI branché : " + d);
+        }
+        if (!added.isEmpty()) reopenLastPorts();
+    }
+
+    /** Opens the last port pair used if both are present and no port is open. */
+    private void reopenLastPorts() {
+        if (client != null) return;
+        String inKey = prefs.get(PREF_IN, null);
+        String outKey = prefs.get(PREF_OUT, null);
+        if (select(inCombo, inKey) && select(outCombo, outKey)) {
+            onOpenPorts();
+        }
+    }
+
+    private void closePorts() {
+        if (paramStreamer != null) paramStreamer.close();
+        paramStreamer = null;
+        if (session != null) session.close();
+        session = null;
+        client = null;
+        btnRecord.setSelected(false);
+        openInKey = null;
+        openOutKey = null;
+        appendLog("Ports fermés");
     }
 
     private void onOpenPorts() {
@@ -171,25 +318,31 @@ public class WaveStationEditor {
         }
 
         try {
-            MidiDevice.Info inInfo = MidiManager.getDeviceInfos()[inIdx];
-            MidiDevice.Info outInfo = MidiManager.getDeviceInfos()[outIdx];
-
-            midiReceiver = new MidiInputReceiver((msg, ts) -> {
-                String s = msgToString(msg);
-                appendLog("RECV: " + s);
-            });
-
-            // listen to sysEx to allow saving
-//            midiReceiver.addSysexListener(data -> {
-//                appendLog("=== SysEx reçu, " + data.length + " bytes ===");
-//                // store last sysex in memory (for saving)
-//                lastSysex = data;
-//            });
-            midiReceiver.addSysexListener(dumpCollector::onSysexReceived);
-
-            midiManager.openInput(inInfo, midiReceiver);
-            outReceiver = midiManager.getOutputReceiver(outInfo);
-
+            MidiDevice.Info inInfo = infos[inIdx];
+            MidiDevice.Info outInfo = infos[outIdx];
+
+            if (session != null) session.close();
+            session = null;
+            client = null;
+            btnRecord.setSelected(false);
+            session = WavestationSession.open(inInfo, outInfo, deviceId,
+                    (msg, ts) -> monitor.logMidi("RECV", msg));
+            session.setErrorListener((msg, err) -> appendLog(msg + " : " + err));
+            client = session.getClient();
+
+            // slider edits: latest value wins, bounded send rate
+            if (paramStreamer != null) paramStreamer.close();
+            WavestationClient c = client;
+            paramStreamer = new ParameterStreamer(
+                    (paramId, value) -> c.sendParameterChange(paramId, value).get(),
+                    ex -> logResult(ex, null, "Erreur envoi param: "));
+
+            openInKey = selectedKey(inCombo);
+            openOutKey = selectedKey(outCombo);
+            if (openInKey != null && openOutKey != null) {
+                prefs.put(PREF_IN, openInKey);
+                prefs.put(PREF_OUT, openOutKey);
+            }
             appendLog("Ports ouverts (IN=" + inInfo.getName() + ", OUT=" + outInfo.getName() + ")");
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -199,49 +352,59 @@ public class WaveStationEditor {
 
     private void onCutoffChanged() {
         int val = sliderCutoff.getValue();
-        appendLog("Cutoff slider -> " + val);
-        if (outReceiver == null) return;
-        try {
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            // ici on envoie un message de paramètre générique (adapter au vrai format Korg)
-            ws.sendParameterChange(0x10, val); // NOTE: à adapter aux vrais IDs
-            appendLog("Envoyé SysEx param cutoff (val=" + val + ")");
-        } catch (Exception ex) {
-            appendLog("Erreur envoi param: " + ex.getMessage());
+        if (paramStreamer == null) return;
+        // ici on envoie un message de paramètre générique (adapter au vrai format Korg)
+        paramStreamer.set(0x10, val); // NOTE: à adapter aux vrais IDs
+        if (!sliderCutoff.getValueIsAdjusting()) {
+            appendLog("Cutoff -> " + val);
         }
     }
 
     private void onGlobalDump() {
-        if (outReceiver == null) {
+        if (client == null) {
             appendLog("Ouvre d'abord le port MIDI OUT");
             return;
         }
-        try {
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            ws.requestGlobalDump();
-            appendLog("Global dump request envoyé");
-        } catch (Exception ex) {
-            appendLog("Erreur Global Dump: " + ex.getMessage());
-        }
+        client.requestGlobalDump()
+              .whenComplete((v, ex) -> logResult(ex, "Global dump request envoyé", "Erreur Global Dump: "));
     }
 
     private void onRequestProgram() {
-        if (outReceiver == null) {
+        if (client == null) {
             appendLog("Ouvre d'abord le port MIDI OUT");
             return;
         }
-        String s = JOptionPane.showInputDialog(frame, "Numéro de programme (0..127):", "0");
+        int last = WavestationSysex.PROGRAMS_PER_BANK - 1;
+        String s = JOptionPane.showInputDialog(frame, "Numéro de programme (0.." + last + "):", "0");
         if (s == null) return;
         try {
             int num = Integer.parseInt(s);
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            ws.requestProgramDump(num);
-            appendLog("Request Program " + num + " envoyé");
-        } catch (Exception ex) {
+            if (num < 0 || num > last) {
+                appendLog("Erreur Request Program: numéro hors limites (0.." + last + ")");
+                return;
+            }
+            int bank = getSelectedBankId();
+            client.requestProgramDump(bank, num)
+                  .whenComplete((v, ex) -> logResult(ex, "Request Program " + bank + "/" + num + " envoyé", "Erreur Request Program: "));
+        } catch (NumberFormatException ex) {
             appendLog("Erreur Request Program: " + ex.getMessage());
         }
     }
 
+    // called from the MIDI output thread: log on the EDT
+    private void logResult(Throwable ex, String successMsg, String errorPrefix) {
+        if (ex instanceof CompletionException || ex instanceof ExecutionException) ex = ex.getCause();
+        if (ex == null) {
+            appendLog(successMsg);
+        } else if (ex instanceof CancellationException) {
+            appendLog(errorPrefix + "annulé");
+        } else if (ex instanceof TimeoutException) {
+            appendLog(errorPrefix + "timeout");
+        } else {
+            appendLog(errorPrefix + ex.getMessage());
+        }
+    }
+
     private byte[] lastSysex = null;
 
     private void onSaveSyx() {
@@ -263,77 +426,113 @@ public class WaveStationEditor {
         }
     }
 
-    private void appendLog(String s) {
-        logArea.append(s + "\n");
-        logArea.setCaretPosition(logArea.getDocument().getLength());
+    // capture of all MIDI traffic, to be replayed with MidiSessionReplayer
+    private void onRecordToggled() {
+        try {
+            if (!btnRecord.isSelected()) {
+                if (session != null) session.stopRecording();
+                appendLog("Enregistrement arrêté");
+                return;
+            }
+            if (session == null) {
+                btnRecord.setSelected(false);
+                appendLog("Ouvre d'abord les ports MIDI");
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("Enregistrements MIDI", "hmrl"));
+            if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+                btnRecord.setSelected(false);
+                return;
+            }
+            File f = chooser.getSelectedFile();
+            if (!f.getName().contains(".")) f = new File(f.getPath() + ".hmrl");
+            session.startRecording(f.toPath());
+            appendLog("Enregistrement vers " + f.getAbsolutePath());
+        } catch (IOException e) {
+            btnRecord.setSelected(false);
+            appendLog("Erreur enregistrement: " + e.getMessage());
+        }
     }
 
-    private String msgToString(MidiMessage msg) {
-        StringBuilder sb = new StringBuilder();
-        byte[] data = msg.getMessage();
-        for (byte b : data) {
-            sb.append(String.format("%02X ", b));
-        }
-        return sb.toString();
+    // thread-safe: the monitor queues entries and repaints at its own frame rate
+    private void appendLog(String s) {
+        monitor.log(s);
     }
     
-    private void exportPatch(int program) {
-        try {
-            dumpCollector.start();
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            ws.requestProgramDump(program);
+    private void exportPatch(int bank, int program) {
+        if (client == null) {
+            appendLog("Ouvre d'abord le port MIDI OUT");
+            return;
+        }
 
-            // attendre réception
-            Thread.sleep(1000);
+        // attendre réception sans bloquer l'EDT
+        btnExportPatch.setEnabled(false);
+        client.dumpProgram(bank, program)
+              .whenComplete((data, ex) -> SwingUtilities.invokeLater(() -> {
+                  btnExportPatch.setEnabled(true);
+                  onDumpReceived(data, ex, "Dump incomplet !", "Patch exporté avec succès");
+              }));
+    }
 
-            if (!dumpCollector.isComplete()) {
-                appendLog("Dump incomplet !");
-                return;
-            }
+    private void onDumpReceived(ByteBuffer data, Throwable ex, String incompleteMsg, String successMsg) {
+        if (ex instanceof CompletionException) ex = ex.getCause();
+        if (ex instanceof CancellationException) {
+            appendLog("Export annulé");   // ports fermés ou requête remplacée : pas une erreur de dump
+            return;
+        }
+        if (ex instanceof TimeoutException) {
+            appendLog(incompleteMsg + " (timeout)");
+            return;
+        }
+        if (ex != null) {
+            appendLog(incompleteMsg + " " + ex.getMessage());
+            return;
+        }
 
-            JFileChooser chooser = new JFileChooser();
-            if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                PatchFileManager.save(
-                    chooser.getSelectedFile(),
-                    dumpCollector.getFullDump()
-                );
-                appendLog("Patch exporté avec succès");
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            try {
+                PatchFileManager.save(chooser.getSelectedFile(), data);
+                appendLog(successMsg);
+            } catch (IOException e) {
+                appendLog("Erreur export: " + e.getMessage());
             }
-
-        } catch (Exception e) {
-            appendLog("Erreur export: " + e.getMessage());
-        } finally {
-            dumpCollector.stop();
         }
     }
     
     private void importPatch() {
+        if (client == null) {
+            appendLog("Ouvre d'abord le port MIDI OUT");
+            return;
+        }
+
         try {
             JFileChooser chooser = new JFileChooser();
             if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) return;
 
             byte[] sysex = PatchFileManager.load(chooser.getSelectedFile());
 
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            if (!ws.isValidWavestationPatch(sysex)) {
+            if (!client.getSynth().isValidWavestationPatch(sysex)) {
                 appendLog("Fichier SYX invalide");
                 return;
             }
 
-            ws.sendFullPatch(sysex);
-            appendLog("Patch importé avec succès");
+            client.sendFullPatch(sysex)
+                  .whenComplete((v, ex) -> logResult(ex, "Patch importé avec succès", "Erreur import: "));
 
         } catch (Exception e) {
             appendLog("Erreur import: " + e.getMessage());
         }
     }
 
+    // the bank tools are built on first use: RAM 1 until then
     private int getSelectedBankId() {
-        return bankCombo.getSelectedIndex(); // 0..3
+        return bankCombo == null ? 0 : bankCombo.getSelectedIndex(); // 0..3
     }
 
     private void exportBank() {
-        if (outReceiver == null) {
+        if (client == null) {
             appendLog("Ouvre d'abord le port MIDI OUT");
             return;
         }
@@ -341,38 +540,17 @@ public class WaveStationEditor {
         int bankId = getSelectedBankId();
         appendLog("Export de la banque " + bankCombo.getSelectedItem());
 
-        try {
-            dumpCollector.start();
-
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-            ws.requestBankDump(bankId);
-
-            // Banque = long → attendre plus longtemps
-            Thread.sleep(4000);
-
-            if (!dumpCollector.isComplete()) {
-                appendLog("Dump de banque incomplet !");
-                return;
-            }
-
-            JFileChooser chooser = new JFileChooser();
-            if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                PatchFileManager.save(
-                    chooser.getSelectedFile(),
-                    dumpCollector.getFullDump()
-                );
-                appendLog("Banque exportée avec succès");
-            }
-
-        } catch (Exception e) {
-            appendLog("Erreur export banque: " + e.getMessage());
-        } finally {
-            dumpCollector.stop();
-        }
+        // Banque = long → le futur se termine dès que la trame complète est arrivée
+        btnExportBank.setEnabled(false);
+        client.dumpBank(bankId)
+              .whenComplete((data, ex) -> SwingUtilities.invokeLater(() -> {
+                  btnExportBank.setEnabled(true);
+                  onDumpReceived(data, ex, "Dump de banque incomplet !", "Banque exportée avec succès");
+              }));
     }
 
     private void importBank() {
-        if (outReceiver == null) {
+        if (client == null) {
             appendLog("Ouvre d'abord le port MIDI OUT");
             return;
         }
@@ -383,15 +561,16 @@ public class WaveStationEditor {
 
             byte[] sysex = PatchFileManager.load(chooser.getSelectedFile());
 
-            WavestationSR ws = new WavestationSR(outReceiver, deviceId);
-
-            if (!ws.isValidWavestationBank(sysex)) {
+            if (!client.getSynth().isValidWavestationBank(sysex)) {
                 appendLog("Fichier SYX banque invalide");
                 return;
             }
 
-            ws.sendFullBank(sysex);
-            appendLog("Banque importée avec succès");
+            // seuls les programmes modifiés depuis le dernier état connu sont envoyés
+            appendLog("Envoi de la banque (" + sysex.length + " octets)...");
+            client.syncBank(sysex)
+                  .whenComplete((report, ex) -> logResult(ex,
+                          "Banque importée avec succès : " + report, "Erreur import banque: "));
 
         } catch (Exception e) {
             appendLog("Erreur import banque: " + e.getMessage());
@@ -400,8 +579,7 @@ public class WaveStationEditor {
 
 
     public static void main(String[] args) {
-        //SwingUtilities.invokeLater(WaveStationEditor::new);
     	System.out.println("Starting WaveStationEditor");
-    	WaveStationEditor wse = new WaveStationEditor();
+        SwingUtilities.invokeLater(WaveStationEditor::new);
     }
 }
@@ -0,0 +1,452 @@
+package com.harmonia.wavestation.library;
+
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.PatchFileManager;
+import com.harmonia.wavestation.WavestationSysex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Patch library store.
+ *
+ * Dumps are appended to a single data file ({@code library.dat}) which is read
+ * through a memory mapping; a compact index ({@code library.idx}: kind, name,
+ * bank, program, SHA-256, offset, length) is loaded at open time. Opening the
+ * library only reads the index, and any dump is then a slice of the mapping.
+ *
+ * In {@link StorageMode#DEDUPLICATED} mode, program and bank dumps are split
+ * into their program records: each distinct record is stored once (keyed by
+ * its SHA-256) and the dump itself becomes a manifest listing the hashes of
+ * its records. The original frame is rebuilt on read.
+ */
+public class PatchLibrary implements Closeable {
+
+    public static final String DATA_FILE = "library.dat";
+    public static final String INDEX_FILE = "library.idx";
+
+    private static final int INDEX_MAGIC = 0x48504C31;   // "HPL1"
+
+    public enum StorageMode {
+        /** Each dump stored as received. */
+        RAW,
+        /** Program records stored once, dumps stored as lists of record hashes. */
+        DEDUPLICATED
+    }
+
+    public enum Kind {
+        /** Dump bytes as received. */
+        RAW,
+        /** One unpacked program record, shared between dumps. */
+        RECORD,
+        /** Dump header + hashes of its records. */
+        MANIFEST
+    }
+
+    private final Path indexPath;
+    private final StorageMode mode;
+
+    private final FileChannel data;
+    private DataOutputStream index;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<ByteBuffer, Entry> byHash = new HashMap<>();
+
+    private MappedByteBuffer mapped;
+    private long dataSize;
+
+    /** One dump of the library. */
+    public static final class Entry {
+        private final Kind kind;
+        private final String name;
+        private final int bank;
+        private final int program;
+        private final byte[] hash;
+        private final long offset;
+        private final int length;
+
+        Entry(Kind kind, String name, int bank, int program, byte[] hash, long offset, int length) {
+            this.kind = kind;
+            this.name = name;
+            this.bank = bank;
+            this.program = program;
+            this.hash = hash;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Kind getKind() { return kind; }
+        public String getName() { return name; }
+        public int getBank() { return bank; }
+        public int getProgram() { return program; }
+        public byte[] getHash() { return hash.clone(); }
+        public long getOffset() { return offset; }
+        public int getLength() { return length; }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** Result of a bulk import. */
+    public static final class ImportReport {
+        public int imported;
+        public int duplicates;
+        public final List<String> failures = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            return imported + " importes, " + duplicates + " doublons, " + failures.size() + " erreurs";
+        }
+    }
+
+    private PatchLibrary(Path dir, StorageMode mode) throws IOException {
+        this.mode = mode;
+        Files.createDirectories(dir);
+        indexPath = dir.resolve(INDEX_FILE);
+        data = FileChannel.open(dir.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataSize = data.size();
+
+        if (!Files.exists(indexPath) || Files.size(indexPath) == 0) {
+            rewriteIndex();
+        } else {
+            loadIndex();
+        }
+        index = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    public static PatchLibrary open(Path dir) throws IOException {
+        return new PatchLibrary(dir, StorageMode.RAW);
+    }
+
+    public static PatchLibrary open(Path dir, StorageMode mode) throws IOException {
+        return new PatchLibrary(dir, mode);
+    }
+
+    public StorageMode getMode() {
+        return mode;
+    }
+
+    public synchronized List<Entry> entries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /** Dumps as added by the user (raw dumps and manifests, no shared records). */
+    public synchronized List<Entry> dumps() {
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.kind != Kind.RECORD) out.add(e);
+        }
+        return out;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Entry findByHash(byte[] hash) {
+        return byHash.get(ByteBuffer.wrap(hash));
+    }
+
+    /** True if exactly this dump is already stored. */
+    public boolean contains(byte[] sysex) {
+        return findByHash(sha256(sysex)) != null;
+    }
+
+    /**
+     * True if this program (unpacked record, {@link WavestationSysex#PROGRAM_SIZE}
+     * bytes) is already stored in any dump of a deduplicated library.
+     */
+    public boolean containsProgram(byte[] programData) {
+        Entry e = findByHash(sha256(programData));
+        return e != null && e.kind == Kind.RECORD;
+    }
+
+    /** Records referenced by a manifest, in dump order. */
+    public synchronized List<Entry> references(Entry manifest) throws IOException {
+        List<Entry> refs = new ArrayList<>();
+        if (manifest.kind != Kind.MANIFEST) return refs;
+        ByteBuffer m = slice(manifest);
+        m.position(1 + m.get(0));
+        int count = m.getShort();
+        for (int i = 0; i < count; i++) {
+            byte[] hash = new byte[32];
+            m.get(hash);
+            Entry r = byHash.get(ByteBuffer.wrap(hash));
+            if (r == null) throw new IOException("Enregistrement manquant dans " + manifest.name);
+            refs.add(r);
+        }
+        return refs;
+    }
+
+    /**
+     * Stores a dump; returns the existing entry if the same bytes are already
+     * in the library.
+     */
+    public synchronized Entry add(String name, byte[] sysex) throws IOException {
+        Entry e = append(name, sysex);
+        index.flush();
+        return e;
+    }
+
+    /**
+     * Read-only view of a dump, straight from the mapping (no copy).
+     * Manifests are rebuilt into the original frame from their records.
+     */
+    public synchronized ByteBuffer read(Entry e) throws IOException {
+        if (e.kind == Kind.MANIFEST) {
+            return ByteBuffer.wrap(rebuild(e)).asReadOnlyBuffer();
+        }
+        return slice(e);
+    }
+
+    private ByteBuffer slice(Entry e) throws IOException {
+        if (mapped == null || e.offset + e.length > mapped.capacity()) {
+            remap();
+        }
+        return mapped.duplicate()
+                .position((int) e.offset)
+                .limit((int) (e.offset + e.length))
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    public byte[] readBytes(Entry e) throws IOException {
+        ByteBuffer b = read(e);
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    /** Imports every .syx file found under {@code dir} (recursively). */
+    public ImportReport importDirectory(Path dir) throws IOException {
+        ImportReport report = new ImportReport();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(p -> Files.isRegularFile(p)
+                            && p.getFileName().toString().toLowerCase().endsWith(".syx"))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+        synchronized (this) {
+            for (Path p : files) {
+                try {
+                    byte[] sysex = PatchFileManager.load(p.toFile());
+                    int before = entries.size();
+                    append(nameOf(p), sysex);
+                    if (entries.size() > before) report.imported++;
+                    else report.duplicates++;
+                } catch (IOException e) {
+                    report.failures.add(p + " : " + e.getMessage());
+                }
+            }
+            index.flush();
+        }
+        return report;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.close();
+        data.close();
+        mapped = null;
+    }
+
+    private Entry append(String name, byte[] sysex) throws IOException {
+        byte[] hash = sha256(sysex);
+        Entry existing = byHash.get(ByteBuffer.wrap(hash));
+        if (existing != null) return existing;
+
+        if (mode == StorageMode.DEDUPLICATED) {
+            Entry manifest = appendDeduplicated(name, sysex, hash);
+            if (manifest != null) return manifest;
+        }
+        return appendBlob(Kind.RAW, name, WavestationSysex.bankOf(sysex), WavestationSysex.programOf(sysex),
+                hash, sysex);
+    }
+
+    // returns null if the dump cannot be split (unknown type, bad length or checksum)
+    private Entry appendDeduplicated(String name, byte[] sysex, byte[] hash) throws IOException {
+        DumpType type = WavestationSysex.dumpType(sysex);
+        if ((type != DumpType.PROGRAM && type != DumpType.BANK) || !WavestationSysex.isValidDump(sysex)) {
+            return null;
+        }
+        byte[] data = WavestationSysex.unpackData(sysex, type);
+        int headerLength = type.getHeaderLength();
+        int count = data.length / WavestationSysex.PROGRAM_SIZE;
+
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream(1 + headerLength + 2 + count * 32);
+        DataOutputStream out = new DataOutputStream(manifest);
+        out.writeByte(headerLength);
+        out.write(sysex, 0, headerLength);
+        out.writeShort(count);
+
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(Arrays.copyOfRange(data, i * WavestationSysex.PROGRAM_SIZE,
+                    (i + 1) * WavestationSysex.PROGRAM_SIZE));
+        }
+        // only keep the manifest if it rebuilds the exact same bytes
+        if (!Arrays.equals(sysex, buildFrame(sysex, 0, headerLength, records))) {
+            return null;
+        }
+
+        int bank = WavestationSysex.bankOf(sysex);
+        for (int i = 0; i < count; i++) {
+            byte[] record = records.get(i);
+            byte[] recordHash = sha256(record);
+            out.write(recordHash);
+            if (!byHash.containsKey(ByteBuffer.wrap(recordHash))) {
+                int program = type == DumpType.PROGRAM ? WavestationSysex.programOf(sysex) : i;
+                appendBlob(Kind.RECORD, name + "#" + program, bank, program, recordHash, record);
+            }
+        }
+        return appendBlob(Kind.MANIFEST, name, bank, WavestationSysex.programOf(sysex),
+                hash, manifest.toByteArray());
+    }
+
+    private byte[] rebuild(Entry manifest) throws IOException {
+        ByteBuffer m = slice(manifest);
+        int headerLength = m.get();
+        byte[] header = new byte[headerLength];
+        m.get(header);
+        List<byte[]> records = new ArrayList<>();
+        for (Entry r : references(manifest)) {
+            ByteBuffer b = slice(r);
+            byte[] record = new byte[b.remaining()];
+            b.get(record);
+            records.add(record);
+        }
+        return buildFrame(header, 0, headerLength, records);
+    }
+
+    private static byte[] buildFrame(byte[] header, int off, int headerLength, List<byte[]> records) {
+        DumpType type = DumpType.fromFunction(header[off + 4] & 0xFF);
+        int[] params = new int[type.getParamCount()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = header[off + 5 + i];
+        }
+        byte[] data = new byte[type.getDataSize()];
+        int pos = 0;
+        for (byte[] r : records) {
+            System.arraycopy(r, 0, data, pos, r.length);
+            pos += r.length;
+        }
+        return WavestationSysex.buildFrame(type, header[off + 2], params, data);
+    }
+
+    private Entry appendBlob(Kind kind, String name, int bank, int program, byte[] hash, byte[] bytes)
+            throws IOException {
+        long offset = dataSize;
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        while (src.hasRemaining()) {
+            data.write(src, offset + src.position());
+        }
+        dataSize += bytes.length;
+
+        Entry e = new Entry(kind, name, bank, program, hash, offset, bytes.length);
+        writeIndexRecord(index, e);
+        register(e);
+        return e;
+    }
+
+    private void register(Entry e) {
+        entries.add(e);
+        byHash.put(ByteBuffer.wrap(e.hash), e);
+    }
+
+    private static void writeIndexRecord(DataOutputStream index, Entry e) throws IOException {
+        index.writeByte(e.kind.ordinal());
+        index.writeLong(e.offset);
+        index.writeInt(e.length);
+        index.writeShort(e.bank);
+        index.writeShort(e.program);
+        index.write(e.hash);
+        index.writeUTF(e.name);
+    }
+
+    private void loadIndex() throws IOException {
+        byte[] raw = Files.readAllBytes(indexPath);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(raw);
+        DataInputStream in = new DataInputStream(bytes);
+        int magic = raw.length < 4 ? 0 : in.readInt();
+        if (magic != INDEX_MAGIC) {
+            throw new IOException("Index de bibliotheque invalide : " + indexPath);
+        }
+
+        int valid = 4;
+        try {
+            while (bytes.available() > 0) {
+                Kind kind = Kind.values()[in.readByte()];
+                long offset = in.readLong();
+                int length = in.readInt();
+                int bank = in.readShort();
+                int program = in.readShort();
+                byte[] hash = new byte[32];
+                in.readFully(hash);
+                String name = in.readUTF();
+                // data not fully written (process killed): ignore the tail
+                if (offset + length > dataSize) break;
+                register(new Entry(kind, name, bank, program, hash, offset, length));
+                valid = raw.length - bytes.available();
+            }
+        } catch (EOFException truncated) {
+            // partial last record
+        }
+        if (valid < raw.length) {
+            try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+            }
+        }
+    }
+
+    private void rewriteIndex() throws IOException {
+        Path tmp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            for (Entry e : entries) {
+                writeIndexRecord(out, e);
+            }
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void remap() throws IOException {
+        if (dataSize > Integer.MAX_VALUE) {
+            throw new IOException("Bibliotheque > 2 Go non supportee");
+        }
+        mapped = data.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+    }
+
+    private static String nameOf(Path p) {
+        String n = p.getFileName().toString();
+        int dot = n.lastIndexOf('.');
+        return dot > 0 ? n.substring(0, dot) : n;
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.harmonia.wavestation.library;
+
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.WavestationBank;
+import com.harmonia.wavestation.WavestationProgram;
+import com.harmonia.wavestation.WavestationSysex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Similarity search over the programs of a library.
+ *
+ * Each program is reduced to a feature vector (one float per entry of
+ * {@link WavestationProgram#PARAMETERS}, each decoded value scaled to 0..1 by
+ * that parameter's own range; waves the structure leaves unused count as 0)
+ * and a 64-bit hash of its data, name excluded. Vectors are packed one after
+ * the other in a single float[], hashes in a long[]: no object per program,
+ * so 100k programs take about 22 MB and a nearest-neighbour scan stays in the
+ * cache-friendly sequential case. A scan abandons a candidate as soon as its partial
+ * distance exceeds the current k-th best.
+ *
+ * Duplicates are found on the hash only (renamed copies included), through a
+ * sorted permutation of the ids rebuilt lazily after additions.
+ */
+public class PatchSimilarityIndex {
+
+    private static final int BODY_OFFSET = WavestationProgram.NAME_OFFSET + WavestationProgram.NAME_LENGTH;
+    private static final WavestationProgram.Parameter[] PARAMETERS =
+            WavestationProgram.PARAMETERS.toArray(new WavestationProgram.Parameter[0]);
+
+    public static final int DIMENSIONS = PARAMETERS.length;
+
+    private float[] features = new float[1024 * DIMENSIONS];
+    private long[] hashes = new long[1024];
+    private String[] labels = new String[1024];
+    private int count;
+
+    private int[] byHash;          // ids sorted by hash, null when stale
+
+    /** One search result. */
+    public static final class Match {
+        private final int id;
+        private final String label;
+        private final float distance;
+
+        Match(int id, String label, float distance) {
+            this.id = id;
+            this.label = label;
+            this.distance = distance;
+        }
+
+        public int getId() { return id; }
+        public String getLabel() { return label; }
+        /** Euclidean distance between feature vectors, 0 for an exact duplicate. */
+        public float getDistance() { return distance; }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.3f)", label, distance);
+        }
+    }
+
+    /** Index of every program held by the dumps of {@code library}. */
+    public static PatchSimilarityIndex build(PatchLibrary library) throws IOException {
+        PatchSimilarityIndex index = new PatchSimilarityIndex();
+        for (PatchLibrary.Entry e : library.dumps()) {
+            index.addDump(e.getName(), library.readBytes(e));
+        }
+        return index;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized String getLabel(int id) {
+        return labels[id];
+    }
+
+    /** Adds one program; returns its id. */
+    public synchronized int add(String label, WavestationProgram program) {
+        if (count == hashes.length) grow();
+        int id = count++;
+        extract(program, features, id * DIMENSIONS);
+        hashes[id] = hash(program.getData());
+        labels[id] = label;
+        byHash = null;
+        return id;
+    }
+
+    /**
+     * Adds the programs of a program or bank dump, labelled
+     * {@code label#n} for a bank. Other frames are ignored; returns the
+     * number of programs added.
+     */
+    public synchronized int addDump(String label, byte[] sysex) {
+        DumpType type = WavestationSysex.dumpType(sysex);
+        if (type == null || sysex.length != type.getFrameLength()) return 0;
+        if (type == DumpType.PROGRAM) {
+            add(label, WavestationProgram.fromDump(sysex));
+            return 1;
+        }
+        if (type != DumpType.BANK) return 0;
+        WavestationBank bank = WavestationBank.wrap(sysex);
+        for (int i = 0; i < bank.size(); i++) {
+            add(label + "#" + i, bank.getProgram(i));
+        }
+        return bank.size();
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        features = Arrays.copyOf(features, capacity * DIMENSIONS);
+        hashes = Arrays.copyOf(hashes, capacity);
+        labels = Arrays.copyOf(labels, capacity);
+    }
+
+    /** The {@code k} programs closest to {@code program}, closest first. */
+    public synchronized List<Match> nearest(WavestationProgram program, int k) {
+        float[] query = new float[DIMENSIONS];
+        extract(program, query, 0);
+        return nearest(query, k, -1);
+    }
+
+    /** The {@code k} programs closest to program {@code id}, itself excluded. */
+    public synchronized List<Match> nearest(int id, int k) {
+        return nearest(Arrays.copyOfRange(features, id * DIMENSIONS, (id + 1) * DIMENSIONS), k, id);
+    }
+
+    private List<Match> nearest(float[] query, int k, int exclude) {
+        k = Math.min(k, count - (exclude >= 0 ? 1 : 0));
+        if (k <= 0) return new ArrayList<>();
+
+        // bounded max-heap on squared distance: root = worst of the best k
+        int[] heapId = new int[k];
+        float[] heapDist = new float[k];
+        int size = 0;
+        float bound = Float.POSITIVE_INFINITY;
+
+        float[] f = features;
+        for (int id = 0; id < count; id++) {
+            if (id == exclude) continue;
+            int base = id * DIMENSIONS;
+            float d = 0;
+            int j = 0;
+            for (; j < DIMENSIONS; j++) {
+                float diff = f[base + j] - query[j];
+                d += diff * diff;
+                if (d >= bound) break;
+            }
+            if (j < DIMENSIONS) continue;
+
+            if (size < k) {
+                siftUp(heapId, heapDist, size++, id, d);
+                if (size == k) bound = heapDist[0];
+            } else {
+                heapId[0] = id;
+                heapDist[0] = d;
+                siftDown(heapId, heapDist, size);
+                bound = heapDist[0];
+            }
+        }
+
+        Match[] out = new Match[size];
+        for (int i = size - 1; i >= 0; i--) {
+            out[i] = new Match(heapId[0], labels[heapId[0]], (float) Math.sqrt(heapDist[0]));
+            heapId[0] = heapId[i];
+            heapDist[0] = heapDist[i];
+            siftDown(heapId, heapDist, i);
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    private static void siftUp(int[] ids, float[] dist, int pos, int id, float d) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (dist[parent] >= d) break;
+            ids[pos] = ids[parent];
+            dist[pos] = dist[parent];
+            pos = parent;
+        }
+        ids[pos] = id;
+        dist[pos] = d;
+    }
+
+    private static void siftDown(int[] ids, float[] dist, int size) {
+        int pos = 0;
+        int id = ids[0];
+        float d = dist[0];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+            if (dist[child] <= d) break;
+            ids[pos] = ids[child];
+            dist[pos] = dist[child];
+            pos = child;
+        }
+        ids[pos] = id;
+        dist[pos] = d;
+    }
+
+    /** Programs holding the same data as {@code program}, whatever their name. */
+    public synchronized List<Match> duplicates(WavestationProgram program) {
+        return duplicates(hash(program.getData()), -1);
+    }
+
+    /** Programs holding the same data as program {@code id}, itself excluded. */
+    public synchronized List<Match> duplicates(int id) {
+        return duplicates(hashes[id], id);
+    }
+
+    private List<Match> duplicates(long hash, int exclude) {
+        int[] sorted = sortedByHash();
+        List<Match> out = new ArrayList<>();
+        for (int i = lowerBound(sorted, hash); i < count && hashes[sorted[i]] == hash; i++) {
+            if (sorted[i] != exclude) out.add(new Match(sorted[i], labels[sorted[i]], 0));
+        }
+        return out;
+    }
+
+    /** Groups of ids sharing the same program data, groups of one left out. */
+    public synchronized List<int[]> duplicateGroups() {
+        int[] sorted = sortedByHash();
+        List<int[]> groups = new ArrayList<>();
+        for (int i = 0; i < count; ) {
+            int j = i + 1;
+            while (j < count && hashes[sorted[j]] == hashes[sorted[i]]) j++;
+            if (j - i > 1) {
+                int[] group = Arrays.copyOfRange(sorted, i, j);
+                Arrays.sort(group);
+                groups.add(group);
+            }
+            i = j;
+        }
+        return groups;
+    }
+
+    private int[] sortedByHash() {
+        if (byHash == null) {
+            // sort the hashes, then place each id at the first free slot of its hash
+            long[] keys = Arrays.copyOf(hashes, count);
+            Arrays.sort(keys);
+            int[] sorted = new int[count];
+            int[] next = new int[count];   // per-rank cursor for equal hashes
+            for (int id = 0; id < count; id++) {
+                int rank = lowerBound(keys, hashes[id]);
+                sorted[rank + next[rank]++] = id;
+            }
+            byHash = sorted;
+        }
+        return byHash;
+    }
+
+    private int lowerBound(int[] sorted, long hash) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hashes[sorted[mid]] < hash) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // decoded parameters, each scaled by its own range; unused waves left at 0
+    private static void extract(WavestationProgram program, float[] out, int offset) {
+        int waves = program.getActiveWaves();
+        for (int i = 0; i < DIMENSIONS; i++) {
+            WavestationProgram.Parameter p = PARAMETERS[i];
+            out[offset + i] = p.getWave() < waves ? p.normalize(program.get(p)) : 0;
+        }
+    }
+
+    // 64-bit FNV-1a of the program body
+    private static long hash(byte[] data) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = BODY_OFFSET; i < WavestationSysex.PROGRAM_SIZE; i++) {
+            h ^= data[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
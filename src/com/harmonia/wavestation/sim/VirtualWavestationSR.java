@@ -0,0 +1,279 @@
+package com.harmonia.wavestation.sim;
+
+import com.harmonia.midi.SysexAssembler;
+import com.harmonia.wavestation.DumpType;
+import com.harmonia.wavestation.WavestationProgram;
+import com.harmonia.wavestation.WavestationSysex;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process Wavestation SR for tests and benchmarks without hardware.
+ *
+ * The device is both a MIDI OUT (its receivers take the host's messages) and
+ * a MIDI IN (its transmitters deliver the replies). It answers the bank and
+ * program dump requests (F0 42 3n 28 10 01 bank / 28 10 00 bank prog) with
+ * realistic frames and ignores anything else, stores received program/bank dumps and acknowledges them. Replies
+ * are released at 31250 baud with optional jitter, split into F7
+ * continuation packets, and can be dropped or truncated on purpose.
+ *
+ * Register it with {@link com.harmonia.midi.MidiManager#registerVirtualDevice}
+ * to open it like a real port.
+ */
+public class VirtualWavestationSR implements MidiDevice {
+
+    private static final class VirtualInfo extends MidiDevice.Info {
+        VirtualInfo(String name) {
+            super(name, "Harmonia", "Wavestation SR virtuel", "1.0");
+        }
+    }
+
+    private final MidiDevice.Info info;
+    private final int deviceId;
+    private final long startNanos = System.nanoTime();
+    private final List<Receiver> receivers = new CopyOnWriteArrayList<>();
+    private final List<Transmitter> transmitters = new CopyOnWriteArrayList<>();
+    private final ExecutorService wire;
+    private final SysexAssembler incoming = new SysexAssembler();
+    private final Map<Integer, byte[]> banks = new HashMap<>();   // unpacked bank data
+    private final Random random = new Random(0x5A);
+
+    private volatile boolean open;
+
+    // simulation settings
+    private volatile int baud = WavestationSysex.MIDI_BAUD;
+    private volatile int packetSize = 256;
+    private volatile long maxJitterMicros = 0;
+    private volatile double dropProbability = 0;
+    private volatile double truncateProbability = 0;
+    private volatile boolean sendAck = true;
+
+    private volatile int dumpsReceived;
+    private volatile long bytesSent;
+
+    public VirtualWavestationSR(String name, int deviceId) {
+        this.info = new VirtualInfo(name);
+        this.deviceId = deviceId;
+        wire = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "virtual-ws-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 0 = no pacing at all (as fast as possible). */
+    public void setBaudRate(int baud) { this.baud = baud; }
+    /** Size of the packets the reply is delivered in (first F0, then F7 continuations). */
+    public void setPacketSize(int packetSize) { this.packetSize = Math.max(8, packetSize); }
+    public void setMaxJitterMicros(long micros) { this.maxJitterMicros = micros; }
+    /** Probability that a whole reply is never sent. */
+    public void setDropProbability(double p) { this.dropProbability = p; }
+    /** Probability that a reply loses its last packet. */
+    public void setTruncateProbability(double p) { this.truncateProbability = p; }
+    public void setSendAck(boolean sendAck) { this.sendAck = sendAck; }
+
+    public int getDumpsReceived() { return dumpsReceived; }
+    public long getBytesSent() { return bytesSent; }
+
+    /** Unpacked data of a bank (generated on first use). */
+    public synchronized byte[] getBankData(int bank) {
+        return bankData(bank).clone();
+    }
+
+    // ---------------------------------------------------------------- MidiDevice
+
+    @Override public MidiDevice.Info getDeviceInfo() { return info; }
+    @Override public void open() { open = true; }
+    @Override public boolean isOpen() { return open; }
+    @Override public int getMaxReceivers() { return -1; }
+    @Override public int getMaxTransmitters() { return -1; }
+    @Override public List<Receiver> getReceivers() { return new ArrayList<>(receivers); }
+    @Override public List<Transmitter> getTransmitters() { return new ArrayList<>(transmitters); }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    @Override
+    public Receiver getReceiver() {
+        Receiver r = new Receiver() {
+            @Override
+            public void send(MidiMessage message, long timeStamp) {
+                if (message instanceof SysexMessage) onHostSysex(message.getMessage());
+            }
+
+            @Override
+            public void close() {
+                receivers.remove(this);
+            }
+        };
+        receivers.add(r);
+        return r;
+    }
+
+    @Override
+    public Transmitter getTransmitter() {
+        Transmitter t = new Transmitter() {
+            private volatile Receiver target;
+
+            @Override public void setReceiver(Receiver receiver) { target = receiver; }
+            @Override public Receiver getReceiver() { return target; }
+            @Override public void close() { transmitters.remove(this); }
+        };
+        transmitters.add(t);
+        return t;
+    }
+
+    // ---------------------------------------------------------------- protocol
+
+    private synchronized void onHostSysex(byte[] chunk) {
+        if ((chunk[0] & 0xFF) == 0xF0) incoming.reset();
+        if (!incoming.append(chunk) || !incoming.isComplete()) return;
+        byte[] msg = incoming.toByteArray();
+        incoming.reset();
+        handle(msg);
+    }
+
+    private void handle(byte[] msg) {
+        int channel = WavestationSysex.channelByte(deviceId);
+        if (msg.length < 6 || (msg[1] & 0xFF) != WavestationSysex.KORG_ID) return;
+
+        // bank request: F0 42 3n 28 10 01 bank F7
+        if (WavestationSysex.isWavestationFrame(msg) && (msg[4] & 0xFF) == 0x10 && msg[5] == 0x01) {
+            int bank = msg[6] & 0x7F;
+            reply(WavestationSysex.buildFrame(DumpType.BANK, deviceId, new int[] { bank }, bankData(bank)));
+            return;
+        }
+        // program request: F0 42 3n 28 10 00 bank prog F7
+        if (WavestationSysex.isWavestationFrame(msg) && (msg[4] & 0xFF) == 0x10 && msg[5] == 0x00 && msg.length >= 9) {
+            int bank = msg[6] & 0x7F;
+            int program = msg[7] & 0x7F;
+            if (program < WavestationSysex.PROGRAMS_PER_BANK) {
+                byte[] data = Arrays.copyOfRange(bankData(bank), program * WavestationSysex.PROGRAM_SIZE,
+                        (program + 1) * WavestationSysex.PROGRAM_SIZE);
+                reply(WavestationSysex.buildFrame(DumpType.PROGRAM, deviceId, new int[] { bank, program }, data));
+            }
+            return;
+        }
+        // incoming dumps: store, then DATA LOAD COMPLETED / ERROR
+        DumpType type = WavestationSysex.dumpType(msg);
+        if (type == DumpType.PROGRAM || type == DumpType.BANK) {
+            boolean ok = WavestationSysex.isValidDump(msg);
+            if (ok) store(type, msg);
+            dumpsReceived++;
+            if (sendAck) {
+                reply(new byte[] { (byte) 0xF0, WavestationSysex.KORG_ID, (byte) channel, WavestationSysex.MODEL_ID,
+                        (byte) (ok ? WavestationSysex.FUNC_DATA_LOAD_COMPLETED : WavestationSysex.FUNC_DATA_LOAD_ERROR),
+                        (byte) 0xF7 });
+            }
+        }
+    }
+
+    private synchronized void store(DumpType type, byte[] msg) {
+        byte[] data = WavestationSysex.unpackData(msg, type);
+        int bank = msg[5] & 0x7F;
+        if (type == DumpType.BANK) {
+            banks.put(bank, data);
+        } else {
+            int program = msg[6] & 0x7F;
+            if (program < WavestationSysex.PROGRAMS_PER_BANK) {
+                System.arraycopy(data, 0, bankData(bank), program * WavestationSysex.PROGRAM_SIZE, data.length);
+            }
+        }
+    }
+
+    private synchronized byte[] bankData(int bank) {
+        return banks.computeIfAbsent(bank, b -> {
+            Random r = new Random(1000 + b);
+            byte[] data = new byte[DumpType.BANK.getDataSize()];
+            r.nextBytes(data);
+            for (int p = 0; p < WavestationSysex.PROGRAMS_PER_BANK; p++) {
+                byte[] program = Arrays.copyOfRange(data, p * WavestationSysex.PROGRAM_SIZE,
+                        (p + 1) * WavestationSysex.PROGRAM_SIZE);
+                WavestationProgram wp = WavestationProgram.of(program);
+                wp.setName(String.format("SIM B%d P%02d", b, p));
+                System.arraycopy(wp.getData(), 0, data, p * WavestationSysex.PROGRAM_SIZE, program.length);
+            }
+            return data;
+        });
+    }
+
+    // ---------------------------------------------------------------- wire
+
+    private void reply(byte[] frame) {
+        if (random.nextDouble() < dropProbability) return;
+        boolean truncate = frame.length > packetSize && random.nextDouble() < truncateProbability;
+        wire.execute(() -> transmit(frame, truncate));
+    }
+
+    private void transmit(byte[] frame, boolean truncate) {
+        long next = System.nanoTime();
+        for (int pos = 0; pos < frame.length; pos += packetSize) {
+            int len = Math.min(packetSize, frame.length - pos);
+            if (truncate && pos + len >= frame.length) return;
+
+            // the packet is delivered once its last byte is on the wire
+            int b = baud;
+            if (b > 0) {
+                next += len * 10L * 1_000_000_000L / b;
+                if (maxJitterMicros > 0) {
+                    next += (long) (random.nextDouble() * maxJitterMicros * 1000);
+                }
+                long delay = next - System.nanoTime();
+                if (delay > 0) LockSupport.parkNanos(delay);
+            }
+
+            byte[] packet;
+            if (pos == 0) {
+                packet = Arrays.copyOf(frame, len);
+            } else {
+                packet = new byte[len + 1];
+                packet[0] = (byte) 0xF7;   // continuation
+                System.arraycopy(frame, pos, packet, 1, len);
+            }
+            deliver(packet);
+            bytesSent += len;
+        }
+    }
+
+    private void deliver(byte[] packet) {
+        try {
+            SysexMessage msg = new SysexMessage();
+            msg.setMessage(packet, packet.length);
+            long ts = getMicrosecondPosition();
+            for (Transmitter t : transmitters) {
+                Receiver r = t.getReceiver();
+                if (r != null) r.send(msg, ts);
+            }
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Stops the simulated wire thread. */
+    public void shutdown() {
+        open = false;
+        wire.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return info.getName();
+    }
+}